@@ -0,0 +1,228 @@
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.math.RoundingMode;
+
+/**
+ * Approximates n! and F(n) by their base 10 logarithms, giving the number of digits and the leading
+ * significant digits without computing the exact value. n! uses Stirling's series and F(n) uses
+ * Binet's formula, both evaluated with enough BigDecimal precision that the leading digits are right
+ * for any n up to Long.MAX_VALUE. Small n, where the asymptotic formulas aren't accurate enough, are
+ * computed exactly instead since that is instant anyway.
+ *
+ * @author Ky Kartchner
+ */
+class Approximation {
+    /**
+     * Number of leading significant digits reported
+     */
+    static final int LEADING_DIGITS = 30;
+
+    /**
+     * Working precision; log10 of n! reaches 20 digits before the decimal point, so this leaves
+     * plenty of digits for the fractional part that becomes the leading digits
+     */
+    private static final MathContext MC = new MathContext(80);
+
+    /**
+     * Below these the exact values are computed instead
+     */
+    private static final long EXACT_FACTORIAL_LIMIT = 1000;
+    private static final long EXACT_FIBONACCI_LIMIT = 150;
+
+    /**
+     * Bernoulli numbers B2, B4, ..., B20 as {numerator, denominator} for the Stirling series
+     */
+    private static final long[][] BERNOULLI = {
+            {1, 6}, {-1, 30}, {1, 42}, {-1, 30}, {5, 66},
+            {-691, 2730}, {7, 6}, {-3617, 510}, {43867, 798}, {-174611, 330}
+    };
+
+    private static final BigDecimal TWO = BigDecimal.valueOf(2);
+    private static final BigDecimal LN2 = atanhInverse(3).multiply(TWO, MC);        // 2 atanh(1/3)
+    private static final BigDecimal LN10 = ln(BigDecimal.TEN);
+    private static final BigDecimal PI = atanInverse(5).multiply(BigDecimal.valueOf(16), MC)
+            .subtract(atanInverse(239).multiply(BigDecimal.valueOf(4), MC), MC); // Machin's formula
+
+    /**
+     * The approximate value of a number, as its leading digits and its decimal exponent.
+     */
+    static class Result {
+        /**
+         * The leading digits as d.ddd...
+         */
+        final String mantissa;
+
+        /**
+         * The number is mantissa * 10^exponent, so it has exponent + 1 digits; this outgrows a long
+         * for n! with n near Long.MAX_VALUE
+         */
+        final BigInteger exponent;
+
+        Result(String mantissa, BigInteger exponent) {
+            this.mantissa = mantissa;
+            this.exponent = exponent;
+        }
+
+        @Override
+        public String toString() {
+            return mantissa + "e+" + exponent + " (" + exponent.add(BigInteger.ONE) + " digits)";
+        }
+    }
+
+    /**
+     * Approximates n! with Stirling's series
+     * ln n! = n ln n - n + ln(2 pi n)/2 + sum of B2k / (2k (2k-1) n^(2k-1)).
+     * For n >= 1000 the first omitted term is below 1e-62, far below what the leading digits need.
+     *
+     * @param n The value to use for n (n >= 0)
+     * @return The approximate value of n!
+     */
+    static Result factorial(long n) {
+        if (n < EXACT_FACTORIAL_LIMIT) {
+            return fromExact(Factorial.compute((int) n));
+        }
+
+        BigDecimal bn = BigDecimal.valueOf(n);
+        BigDecimal lnN = ln(bn);
+
+        BigDecimal lnFactorial = bn.multiply(lnN, MC).subtract(bn, MC)
+                .add(ln(PI.multiply(TWO, MC).multiply(bn, MC)).divide(TWO, MC), MC);
+
+        BigDecimal nSquared = bn.multiply(bn, MC);
+        BigDecimal nPower = bn; // n^(2k-1)
+        for (int k = 1; k <= BERNOULLI.length; ++k) {
+            long[] b = BERNOULLI[k - 1];
+            BigDecimal denominator = BigDecimal.valueOf(b[1] * (2L * k) * (2L * k - 1)).multiply(nPower, MC);
+            lnFactorial = lnFactorial.add(BigDecimal.valueOf(b[0]).divide(denominator, MC), MC);
+            nPower = nPower.multiply(nSquared, MC);
+        }
+
+        return fromLog10(lnFactorial.divide(LN10, MC));
+    }
+
+    /**
+     * Approximates F(n), where F(0) = 0 and F(1) = 1, with Binet's formula F(n) = round(phi^n / sqrt(5)).
+     * The dropped psi^n / sqrt(5) term is below 1e-62 relative to F(n) for n >= 150, where F(n) has
+     * more digits than are reported.
+     *
+     * @param n The index of the Fibonacci number (n >= 0)
+     * @return The approximate value of F(n)
+     */
+    static Result fibonacci(long n) {
+        if (n < EXACT_FIBONACCI_LIMIT) {
+            return fromExact(Fibonacci.compute(n));
+        }
+
+        BigDecimal sqrt5 = BigDecimal.valueOf(5).sqrt(MC);
+        BigDecimal phi = BigDecimal.ONE.add(sqrt5).divide(TWO, MC);
+
+        BigDecimal lnFib = BigDecimal.valueOf(n).multiply(ln(phi), MC).subtract(ln(sqrt5), MC);
+        return fromLog10(lnFib.divide(LN10, MC));
+    }
+
+    /**
+     * Builds a result from the digits of an exactly computed number.
+     */
+    private static Result fromExact(BigInteger value) {
+        String digits = value.toString();
+        String leading = digits.substring(0, Math.min(LEADING_DIGITS, digits.length()));
+        String mantissa = leading.length() > 1 ? leading.charAt(0) + "." + leading.substring(1) : leading;
+
+        return new Result(mantissa, BigInteger.valueOf(digits.length() - 1));
+    }
+
+    /**
+     * Builds a result from the base 10 logarithm of a number: the integer part is the exponent and
+     * 10 raised to the fractional part gives the leading digits.
+     */
+    private static Result fromLog10(BigDecimal log10) {
+        BigDecimal exponent = log10.setScale(0, RoundingMode.FLOOR);
+        BigDecimal fraction = log10.subtract(exponent, MC);
+
+        BigDecimal mantissa = exp(fraction.multiply(LN10, MC))
+                .round(new MathContext(LEADING_DIGITS, RoundingMode.DOWN));
+
+        return new Result(mantissa.toPlainString(), exponent.toBigIntegerExact());
+    }
+
+    /**
+     * Natural logarithm of x > 0. x is reduced to m * 2^k with m in [1, 2), and
+     * ln(m) = 2 atanh((m - 1) / (m + 1)) is summed as a series.
+     */
+    private static BigDecimal ln(BigDecimal x) {
+        int k = 0;
+        while (x.compareTo(TWO) >= 0) {
+            x = x.divide(TWO, MC);
+            ++k;
+        }
+        while (x.compareTo(BigDecimal.ONE) < 0) {
+            x = x.multiply(TWO, MC);
+            --k;
+        }
+
+        BigDecimal z = x.subtract(BigDecimal.ONE).divide(x.add(BigDecimal.ONE), MC);
+        BigDecimal lnM = atanh(z).multiply(TWO, MC);
+
+        return lnM.add(LN2.multiply(BigDecimal.valueOf(k), MC), MC);
+    }
+
+    /**
+     * e^x for 0 <= x < 3, by summing the Taylor series for x / 2^8 and squaring the result 8 times.
+     */
+    private static BigDecimal exp(BigDecimal x) {
+        final int halvings = 8;
+        BigDecimal reduced = x.divide(BigDecimal.valueOf(1 << halvings), MC);
+
+        BigDecimal sum = BigDecimal.ONE;
+        BigDecimal term = BigDecimal.ONE;
+        for (int i = 1; term.compareTo(BigDecimal.ZERO) != 0 && term.scale() - term.precision() < MC.getPrecision();
+                ++i) {
+            term = term.multiply(reduced, MC).divide(BigDecimal.valueOf(i), MC);
+            sum = sum.add(term, MC);
+        }
+
+        for (int i = 0; i < halvings; ++i) {
+            sum = sum.multiply(sum, MC);
+        }
+        return sum;
+    }
+
+    /**
+     * atanh(z) = z + z^3/3 + z^5/5 + ... for |z| < 1.
+     */
+    private static BigDecimal atanh(BigDecimal z) {
+        return oddPowerSeries(z, false);
+    }
+
+    /**
+     * atanh(1/x)
+     */
+    private static BigDecimal atanhInverse(int x) {
+        return atanh(BigDecimal.ONE.divide(BigDecimal.valueOf(x), MC));
+    }
+
+    /**
+     * atan(1/x) = 1/x - 1/(3x^3) + 1/(5x^5) - ...
+     */
+    private static BigDecimal atanInverse(int x) {
+        return oddPowerSeries(BigDecimal.ONE.divide(BigDecimal.valueOf(x), MC), true);
+    }
+
+    /**
+     * Sums z + z^3/3 + z^5/5 + ..., with alternating signs if alternate is true, until the terms
+     * no longer affect the working precision.
+     */
+    private static BigDecimal oddPowerSeries(BigDecimal z, boolean alternate) {
+        BigDecimal zSquared = z.multiply(z, MC);
+        BigDecimal power = z;
+        BigDecimal sum = BigDecimal.ZERO;
+
+        for (int i = 1; power.signum() != 0 && power.scale() - power.precision() < MC.getPrecision() + 2; i += 2) {
+            BigDecimal term = power.divide(BigDecimal.valueOf(i), MC);
+            sum = (alternate && (i / 2) % 2 == 1) ? sum.subtract(term, MC) : sum.add(term, MC);
+            power = power.multiply(zSquared, MC);
+        }
+        return sum;
+    }
+}
@@ -1,13 +1,35 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
 import java.math.BigInteger;
 import java.math.BigDecimal;
-import java.math.RoundingMode;
-import java.util.function.Consumer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongFunction;
 
 /**
  * Computes the Fibonacci of a specified number, the factorial of a specified
  * number, or estimates the value of 'e' using the specified number of 
  * iterations of a Taylor series
  *
+ * The "-digits [d]" option sets how many digits of 'e' are printed, and applies
+ * to every "-e" on the commandline regardless of where it appears. The
+ * "-out [file]" option writes the results to a file instead of the console, and
+ * the "-approx" flag prints only the leading digits and digit count of Fibonacci
+ * numbers and factorials, which is instant even for huge n. The "-cache [dir]"
+ * option saves checkpoint values in [dir] so later runs can resume from them
+ *
+ * "--batch [file]" reads commands such as "fac 5000" from [file] (or stdin if
+ * [file] is "-") and computes them concurrently, printing results in order
+ *
  * If the number of commandline arguments is invalid the program prints a
  * help menu
  *
@@ -16,34 +38,162 @@ import java.util.function.Consumer;
  */
 public class Assign1
 {
+    /**
+     * Number of digits after the decimal point to print for 'e'; -1 keeps the default double format
+     */
+    private static int eDigits = -1;
+
+    /**
+     * If true, Fibonacci numbers and factorials are approximated instead of computed exactly
+     */
+    private static boolean approximate = false;
+
+    /**
+     * Where results are written; numbers are streamed to it without building their full String
+     */
+    private static DecimalWriter out = DecimalWriter.toStdout();
+
+    /**
+     * Checkpoints saved by earlier runs to resume from; null unless "-cache [dir]" is given
+     */
+    private static CheckpointCache cache = null;
+
+    /**
+     * Marks the end of the batch results; it is never run
+     */
+    private static final Future<TimedResult> END_OF_BATCH = new FutureTask<>(() -> null);
+
     public static void main(String[] args) {
-        // Print help menu if number of arguments is 0 or not a multiple of 2:
-        if (args.length == 0 || (args.length % 2 != 0)){ 
+        // Print help menu if there are no arguments or an argument is missing its value:
+        if (args.length == 0 || !hasAllValues(args)){ 
             printHelpMenu();
             return;
         }
 
+        // Options apply to every command, so read them before executing anything:
+        boolean hasOut = false;
+        for (int i = 0; i < args.length; ++i){
+            switch (args[i]){
+                case "-approx":
+                    approximate = true;
+                    break;
+                case "-digits":
+                    print(executeIfValid(d -> {
+                        eDigits = (int)d;
+                        return null; // Nothing to print
+                    }, args[++i], 0, Integer.MAX_VALUE, "Valid digits range is "));
+                    break;
+                case "-out":
+                    if (hasOut){ // Opening a second file would truncate it, and the first would be left open
+                        System.out.println("Option \"-out\" can only be given once");
+                        closeOutput();
+                        return;
+                    }
+                    hasOut = true;
+                    try {
+                        out = DecimalWriter.toFile(Paths.get(args[++i]));
+                    } catch (IOException | RuntimeException e){
+                        System.out.println("Could not open output file: " + e);
+                        return;
+                    }
+                    break;
+                case "-cache":
+                    try {
+                        cache = new CheckpointCache(Paths.get(args[++i]));
+                    } catch (IOException | RuntimeException e){
+                        System.out.println("Could not open cache directory: " + e);
+                        return;
+                    }
+                    break;
+                default:
+                    ++i; // Skip the command's value
+                    break;
+            }
+        }
+
         // Loop through and execute the command line arguments if valid:
         for (int i = 0; i < args.length; ++i){
             switch (args[i]){
                 case "-fib":
-                    // number for fib should be next argument (arg[i+1])
-                    executeIfValid(Assign1::printFibonacci, args[++i], 0, 40,
-                            "Fibonacci valid range is "); // skip i+1 by incrementing a second time
-                    break;
                 case "-fac":
-                    executeIfValid(Assign1::printFactorial, args[++i], 0, Integer.MAX_VALUE,
-                            "Factorial valid range is ");
-                    break;
                 case "-e":
-                    executeIfValid(Assign1::printEuler, args[++i], 1, Integer.MAX_VALUE,
-                            "Valid e iterations range is ");
+                    // number for the command should be next argument (arg[i+1])
+                    print(runCommand(args[i].substring(1), args[++i])); // skip i+1 by incrementing a second time
+                    break;
+                case "--batch":
+                    runBatch(args[++i]);
+                    break;
+                case "-approx":
+                    break;
+                case "-digits":
+                case "-out":
+                case "-cache":
+                    ++i; // Already handled above, so just skip the value
                     break;
                 default:
                     System.out.println("Unknown command line argument: " + args[i++]);
                     break;
             }
         }
+
+        closeOutput();
+    }
+
+    /**
+     * Flushes and closes the output (the console's is flushed but left open)
+     */
+    private static void closeOutput(){
+        try {
+            out.close();
+        } catch (IOException e){
+            System.out.println("Output error: " + e);
+        }
+    }
+
+    /**
+     * Checks that every command and option that takes a value is followed by one
+     *
+     * @param args The commandline arguments
+     * @return True if no value is missing
+     */
+    private static boolean hasAllValues(String[] args){
+        int i = 0;
+        while (i < args.length){
+            i += args[i].equals("-approx") ? 1 : 2; // -approx is the only argument without a value
+        }
+        return i == args.length;
+    }
+
+    /**
+     * Computes the result of a command, which is the name of a commandline argument without the
+     * leading '-' (i.e. "fib", "fac", or "e"), if numArg is valid and in range
+     *
+     * @param name The command to run
+     * @param numArg The number to pass to the command
+     * @return The result of the command, or the error message if it couldn't be run
+     */
+    private static Result runCommand(String name, String numArg){
+        switch (name){
+            case "fib":
+                if (approximate){
+                    return executeIfValid(Assign1::approximateFibonacci, numArg, 0, Long.MAX_VALUE - 1,
+                            "Fibonacci valid range is ");
+                }
+                return executeIfValid(n -> computeFibonacci((int)n), numArg, 0, Integer.MAX_VALUE,
+                        "Fibonacci valid range is ");
+            case "fac":
+                if (approximate){
+                    return executeIfValid(Assign1::approximateFactorial, numArg, 0, Long.MAX_VALUE,
+                            "Factorial valid range is ");
+                }
+                return executeIfValid(n -> computeFactorial((int)n), numArg, 0, Integer.MAX_VALUE,
+                        "Factorial valid range is ");
+            case "e":
+                return executeIfValid(n -> computeEuler((int)n), numArg, 1, Integer.MAX_VALUE,
+                        "Valid e iterations range is ");
+            default:
+                return message("Unknown command: " + name);
+        }
     }
 
     /** 
@@ -53,22 +203,128 @@ public class Assign1
      * @param numArg The number to be parsed and passed into the action
      * @param min Lowerbound for num
      * @param max Upperbound for num
-     * @
+     * @param rangeErrMsg The message to print before the range if num is out of range
+     * @return The result of the action, or the error message if numArg is invalid
      */
-    private static void executeIfValid(Consumer<Integer> action, String numArg,
-            int min, int max, String rangeErrMsg){ 
+    private static Result executeIfValid(LongFunction<Result> action, String numArg,
+            long min, long max, String rangeErrMsg){ 
         try {
             long num = Long.parseLong(numArg); // Throws NumberFormatException if numArg invalid 
 
             boolean inRange = (min <= num && num <= max);
             if (inRange){
-                action.accept((int)num); // Execute provided function with num passed in as argument
+                return action.apply(num); // Execute provided function with num passed in as argument
             } else {
-                System.out.println(rangeErrMsg + "[" + min + ", " + max + "]");
+                return message(rangeErrMsg + "[" + min + ", " + max + "]");
             }
 
         } catch (NumberFormatException e){
-            System.out.println("Commandline error: " + e);
+            return message("Commandline error: " + e);
+        }
+    }
+
+    /**
+     * Reads commands (e.g. "fac 5000" or "fib 90"), one per line, and computes them concurrently on a
+     * bounded pool of threads. A separate thread writes the results in the same order as the commands
+     * through the buffered output, while the time each command took is reported on stderr. Blank lines
+     * and lines starting with '#' are skipped. If the results can't be written, the batch stops: no more
+     * commands are read, and those not yet computed are cancelled.
+     *
+     * @param source The file to read the commands from, or "-" for stdin
+     */
+    private static void runBatch(String source){
+        int threadCount = Runtime.getRuntime().availableProcessors();
+        ExecutorService threadPool = Executors.newFixedThreadPool(threadCount);
+
+        // Bounded so that reading stops while too many results are waiting to be written:
+        BlockingQueue<Future<TimedResult>> pending = new ArrayBlockingQueue<>(threadCount * 4);
+        AtomicBoolean writeFailed = new AtomicBoolean();
+        Thread writer = new Thread(() -> writeBatchResults(pending, writeFailed));
+        writer.start();
+
+        long startTime = System.nanoTime();
+        int count = 0;
+        try (BufferedReader reader = source.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in))
+                : Files.newBufferedReader(Paths.get(source))){
+            String line;
+            while (!writeFailed.get() && (line = reader.readLine()) != null){
+                String command = line.trim();
+                if (command.isEmpty() || command.startsWith("#")){
+                    continue;
+                }
+
+                pending.put(threadPool.submit(() -> {
+                    long start = System.nanoTime();
+                    String[] parts = command.split("\\s+");
+                    Result result = parts.length == 2
+                            ? runCommand(parts[0].startsWith("-") ? parts[0].substring(1) : parts[0], parts[1])
+                            : message("Batch commands must be a name and a number: " + command);
+                    return new TimedResult(command, result, System.nanoTime() - start);
+                }));
+                ++count;
+            }
+        } catch (IOException e){
+            System.out.println("Could not read batch commands: " + e);
+        } catch (InterruptedException e){
+            System.out.println(e);
+        }
+
+        try {
+            pending.put(END_OF_BATCH);
+            writer.join();
+        } catch (InterruptedException e){
+            System.out.println(e);
+        }
+        if (writeFailed.get()){
+            threadPool.shutdownNow();
+            System.err.printf("Batch: stopped after %d commands, as the results could not be written\n", count);
+            return;
+        }
+        threadPool.shutdown();
+
+        double elapsed = (System.nanoTime() - startTime) / 1e9;
+        System.err.printf("Batch: %d commands in %.3f s (%.1f commands/s)\n", count, elapsed, count / elapsed);
+    }
+
+    /**
+     * Writes the batch results in order as they complete, flushing whenever no finished result is waiting.
+     * If writing fails, the rest of the results are taken and cancelled, so the batch is never left waiting
+     * for room to queue more.
+     *
+     * @param pending     The results in command order, ending with END_OF_BATCH
+     * @param writeFailed Set to true if writing fails
+     */
+    private static void writeBatchResults(BlockingQueue<Future<TimedResult>> pending, AtomicBoolean writeFailed){
+        Future<TimedResult> next = null;
+        try {
+            while ((next = pending.take()) != END_OF_BATCH){
+                try {
+                    TimedResult timed = next.get();
+                    timed.result.writeTo(out);
+                    System.err.printf("%s : %.3f ms\n", timed.command, timed.nanos / 1e6);
+                } catch (ExecutionException e){ // Keep going so the rest of the batch still gets written
+                    message("Batch error: " + e.getCause()).writeTo(out);
+                }
+
+                Future<TimedResult> following = pending.peek();
+                if (following == null || following == END_OF_BATCH || !following.isDone()){
+                    out.flush(); // Nothing else is ready, so let what has been written so far out
+                }
+            }
+            out.flush();
+        } catch (IOException e){
+            System.err.println("Output error: " + e);
+            writeFailed.set(true);
+            try {
+                for (; next != END_OF_BATCH; next = pending.take()){
+                    next.cancel(true);
+                }
+            } catch (InterruptedException ex){
+                System.err.println(ex);
+            }
+        } catch (InterruptedException e){
+            System.err.println(e);
         }
     }
 
@@ -77,65 +333,137 @@ public class Assign1
      */
     private static void printHelpMenu(){
         System.out.print("--- Assign 1 Help ---" 
-                + "\n-fib [n] : Compute the Fibonacci of [n]; valid range [0, 40]"
+                + "\n-fib [n] : Compute the Fibonacci of [n]; valid range [0, "
+                + Integer.MAX_VALUE + "]"
                 + "\n-fac [n] : Compute the factorial of [n]; valid range [0, "
                 + Integer.MAX_VALUE + "]"
                 + "\n-e [n] : Compute the value of 'e' using [n] iterations; valid range [1, "
-                + Integer.MAX_VALUE + "]\n"); 
+                + Integer.MAX_VALUE + "]"
+                + "\n-digits [d] : Print 'e' with [d] digits after the decimal point; valid range [0, "
+                + Integer.MAX_VALUE + "]"
+                + "\n-out [file] : Write the results to [file] instead of the console"
+                + "\n-cache [dir] : Save checkpoint values in [dir] and resume from them in later runs"
+                + "\n--batch [file] : Run commands like \"fib 90\" from [file], one per line, concurrently;"
+                + " use - for stdin"
+                + "\n-approx : Print only the leading digits of Fibonacci numbers and factorials;"
+                + " valid range becomes [0, " + Long.MAX_VALUE + "]\n"); 
     }
 
     /**
-     * Calculates and prints the nth number in the Fibonacci sequence
+     * A computed result waiting to be written to the output
+     */
+    private interface Result {
+        void writeTo(DecimalWriter out) throws IOException;
+    }
+
+    /**
+     * A batch command's result along with how long it took to compute
+     */
+    private static class TimedResult {
+        final String command;
+        final Result result;
+        final long nanos;
+
+        TimedResult(String command, Result result, long nanos){
+            this.command = command;
+            this.result = result;
+            this.nanos = nanos;
+        }
+    }
+
+    /**
+     * Writes a result to the output right away
      *
-     * @param n The value to use for n
+     * @param result The result to write; nothing is written if null
      */
-    private static void printFibonacci (int n) {
-        int numA = 1;
-        int numB = 1;
+    private static void print(Result result){
+        if (result == null){
+            return;
+        }
 
-        int fib = 1;
-        for (int i = 1; i < n; ++i){ // Only enters loop if n is greater than 1
-            fib = numA + numB;
-            numA = numB;
-            numB = fib;
+        try {
+            result.writeTo(out);
+            out.flush();
+        } catch (IOException e){
+            System.out.println("Output error: " + e);
         }
+    }
+
+    /**
+     * Creates a result that is a single line of text
+     *
+     * @param line The text of the line
+     */
+    private static Result message(String line){
+        return out -> out.print(line + "\n");
+    }
+
+    /**
+     * Calculates the nth number in the Fibonacci sequence
+     *
+     * @param n The value to use for n
+     */
+    private static Result computeFibonacci (int n) {
+        // The sequence here starts 1, 1, 2, 3... so the nth number is F(n+1) where F(0) = 0:
+        BigInteger fib = Fibonacci.pair(n + 1L, cache)[0];
+
+        return out -> {
+            out.print("Fibonacci of " + n + " is ");
+            out.printDecimal(fib);
+            out.print("\n");
+        };
+    }
 
-        System.out.println("Fibonacci of " + n + " is " + fib);
+    /**
+     * Approximates the leading digits and digit count of the nth number in the Fibonacci sequence
+     *
+     * @param n The value to use for n
+     */
+    private static Result approximateFibonacci(long n) {
+        return message("Fibonacci of " + n + " is approximately " + Approximation.fibonacci(n + 1));
     }
 
     /**
-     * Calculates and prints n factorial
+     * Approximates the leading digits and digit count of n factorial
      *
      * @param n The value to use for n!
      */
-    private static void printFactorial(int n) {
-        BigInteger factorial = BigInteger.ONE; // Factorial is 1 for 1! and 0!
-        // Loop results in factorial equalling n * n-1 * n-2 ... etc.
-        for (int i = n; i > 1; --i){ // Only enters loop for n > 1 
-            factorial = factorial.multiply(BigInteger.valueOf(i)); 
-        }
+    private static Result approximateFactorial(long n) {
+        return message("Factorial of " + n + " is approximately " + Approximation.factorial(n));
+    }
 
-        System.out.println("Factorial of " + n + " is " + factorial);
+    /**
+     * Calculates n factorial
+     *
+     * @param n The value to use for n!
+     */
+    private static Result computeFactorial(int n) {
+        BigInteger factorial = Factorial.compute(n, cache); // Product tree of 1 * 2 * ... * n; 1 for 1! and 0!
+
+        return out -> {
+            out.print("Factorial of " + n + " is ");
+            out.printDecimal(factorial);
+            out.print("\n");
+        };
     }
 
     /**
-     * Approximates and prints Euler's number using the Taylor series (1/1 + 1/2! +...+ 1/n!)
+     * Approximates Euler's number using the Taylor series (1/0! + 1/1! +...+ 1/(n-1)!)
      * 
      * @param n The number of iterations to use in the Taylor Series
      */
-    private static void printEuler(int n){
-        BigDecimal approximation = BigDecimal.ZERO; // Approximation starts at 0 
-        BigDecimal denominator = BigDecimal.ONE; // First term in Taylor series should be 1/1
-
-        for (int i = 1; i <= n; ++i){ // Loop n times
-            // Add 1/denominator to approximation:
-            approximation = approximation.add(BigDecimal.ONE.divide(denominator,
-                        1000, RoundingMode.HALF_UP));  
-            // denominator  *= i to result in 1/1 then 1/1*2 then 1/1*2*3 up to 1/n! 
-            denominator = denominator.multiply(BigDecimal.valueOf(i)); 
+    private static Result computeEuler(int n){
+        if (eDigits < 0){ // No precision requested, so print 16 decimal places like a double
+            BigDecimal approximation = EulerSeries.compute(n, 20, cache);
+            return message(String.format("Value of e using %d iterations is %.16f",  n,
+                    approximation.doubleValue()));
         }
 
-        System.out.printf("Value of e using %d iterations is %.16f\n",  n,
-                approximation.doubleValue());
+        BigDecimal approximation = EulerSeries.compute(n, eDigits, cache);
+        return out -> {
+            out.print("Value of e using " + n + " iterations is ");
+            out.printDecimal(approximation.unscaledValue(), eDigits);
+            out.print("\n");
+        };
     }
 }
@@ -0,0 +1,70 @@
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Times the big number engines used by Assign1. Each case is run once to warm up the JIT and then
+ * timed over a few runs, reporting the best time. Run with: java Benchmark
+ *
+ * The multiplication cases compare BigInteger.multiply with the NTT multiplier on random operands of
+ * 10^5 to 10^8 bits. The biggest sizes take minutes, so they are only run when "-large" is given
+ * (and need a heap of a few GB, e.g. java -Xmx4g Benchmark -large).
+ *
+ * @author Ky Kartchner
+ */
+public class Benchmark {
+    private static final int RUNS = 3;
+
+    public static void main(String[] args) {
+        time("Fibonacci F(10^6)", () -> Fibonacci.compute(1_000_000));
+        time("Fibonacci F(10^7)", () -> Fibonacci.compute(10_000_000));
+        time("Factorial 10^5!", () -> Factorial.compute(100_000));
+        time("Factorial 10^6!", () -> Factorial.compute(1_000_000));
+        time("e to 10^5 digits", () -> EulerSeries.compute(30_000, 100_000).unscaledValue());
+
+        boolean large = args.length > 0 && args[0].equals("-large");
+        Random random = new Random(3100);
+        for (int bits = 100_000; bits <= (large ? 100_000_000 : 10_000_000); bits *= 10) {
+            BigInteger a = new BigInteger(bits, random);
+            BigInteger b = new BigInteger(bits, random);
+            int runs = bits >= 10_000_000 ? 1 : RUNS;
+
+            String size = "10^" + (int) Math.log10(bits) + " bits";
+            time("multiply " + size, runs, () -> a.multiply(b));
+            time("NTT multiply " + size, runs, () -> NttMultiplier.multiplyNtt(a, b));
+        }
+    }
+
+    /**
+     * Runs the specified computation and prints its best time out of RUNS and the size of its result.
+     *
+     * @param name        The name to print for the case
+     * @param computation The computation to time
+     */
+    private static void time(String name, Supplier<BigInteger> computation) {
+        time(name, RUNS, computation);
+    }
+
+    /**
+     * Runs the specified computation and prints its best time out of the specified number of runs and the
+     * size of its result.
+     *
+     * @param name        The name to print for the case
+     * @param runs        The number of timed runs; a warm up run is only done if there is more than one
+     * @param computation The computation to time
+     */
+    private static void time(String name, int runs, Supplier<BigInteger> computation) {
+        BigInteger result = runs > 1 ? computation.get() : null; // Warm up
+
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < runs; ++i) {
+            long start = System.nanoTime();
+            result = computation.get();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+
+        // Estimate the digit count from the bit length so that toString() isn't part of the benchmark:
+        long digits = (long) (result.bitLength() * Math.log10(2)) + 1;
+        System.out.printf("%-28s %,10.1f ms  (~%,d digits)\n", name, best / 1e6, digits);
+    }
+}
@@ -0,0 +1,243 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.BinaryOperator;
+
+/**
+ * Caches checkpoint values of the sequence computations on disk so that later runs can resume from the
+ * nearest checkpoint instead of starting over. Each checkpoint is one small binary file holding one or
+ * more BigIntegers, and a size limited least-recently-used map keeps recently used checkpoints in memory.
+ *
+ * A checkpoint is identified by a kind (such as "fac") and a key (such as n for n!).
+ *
+ * @author Ky Kartchner
+ */
+class CheckpointCache {
+    /**
+     * Values below this are cheap enough to compute that caching them isn't worth a file
+     */
+    static final long MIN_CACHED = 1 << 12;
+
+    private static final int MAGIC = 0x41314350; // "A1CP"
+
+    /**
+     * Default limit for the total size of the values kept in memory
+     */
+    private static final long DEFAULT_MEMORY_BITS = 256L << 20; // 32 MiB
+
+    private final Path directory;
+    private final long memoryLimitBits;
+    private long memoryBits = 0;
+
+    /**
+     * In-memory values, ordered from least to most recently used
+     */
+    private final LinkedHashMap<String, BigInteger[]> recent = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * The keys available on disk for each kind, read from the directory the first time a kind is used
+     */
+    private final HashMap<String, TreeSet<Long>> keys = new HashMap<>();
+
+    /**
+     * Computes part of a sequence value from a range of its terms.
+     */
+    interface RangeFunction {
+        /**
+         * @param lo The term before the first term of the range
+         * @param hi The last term of the range
+         * @return The value of the terms (lo, hi]
+         */
+        BigInteger[] compute(long lo, long hi);
+    }
+
+    /**
+     * Creates a cache in the specified directory, creating the directory if needed.
+     *
+     * @param directory The directory to keep checkpoint files in
+     * @throws IOException If the directory can't be created
+     */
+    CheckpointCache(Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.memoryLimitBits = DEFAULT_MEMORY_BITS;
+    }
+
+    /**
+     * Computes the value of the terms (0, n] of a sequence whose values can be combined range by range
+     * (such as the product 1 * 2 * ... * n), resuming from the largest cached checkpoint at or below n.
+     * The value at the largest power of two below n is saved as a new checkpoint along the way, and the
+     * value at n is saved as well.
+     *
+     * @param kind    The kind of value
+     * @param n       The last term
+     * @param range   Computes the value of a range of terms
+     * @param combine Combines the value of (0, m] with the value of (m, n] into the value of (0, n]
+     * @return The value of the terms (0, n]
+     */
+    BigInteger[] computeRange(String kind, long n, RangeFunction range, BinaryOperator<BigInteger[]> combine) {
+        if (n < MIN_CACHED) {
+            return range.compute(0, n);
+        }
+
+        long start = 0;
+        BigInteger[] value = null;
+        Long from = floorKey(kind, n);
+        if (from != null && (value = get(kind, from)) != null) {
+            start = from;
+            if (start == n) {
+                return value;
+            }
+        }
+
+        long checkpoint = Long.highestOneBit(n);
+        if (start < checkpoint && checkpoint < n) {
+            BigInteger[] part = range.compute(start, checkpoint);
+            value = value == null ? part : combine.apply(value, part);
+            put(kind, checkpoint, value);
+            start = checkpoint;
+        }
+
+        BigInteger[] part = range.compute(start, n);
+        value = value == null ? part : combine.apply(value, part);
+        put(kind, n, value);
+
+        return value;
+    }
+
+    /**
+     * Returns the largest key at or below n that is cached for the specified kind, or null if there is none.
+     */
+    synchronized Long floorKey(String kind, long n) {
+        return keysFor(kind).floor(n);
+    }
+
+    /**
+     * Returns the cached values for the specified checkpoint, or null if it isn't cached.
+     *
+     * @param kind The kind of value
+     * @param key  The checkpoint's key
+     */
+    synchronized BigInteger[] get(String kind, long key) {
+        String name = fileName(kind, key);
+        BigInteger[] values = recent.get(name);
+        if (values != null || !keysFor(kind).contains(key)) {
+            return values;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(directory.resolve(name))))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a checkpoint file");
+            }
+
+            values = new BigInteger[in.readInt()];
+            for (int i = 0; i < values.length; ++i) {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                values[i] = new BigInteger(bytes);
+            }
+        } catch (IOException e) { // Unreadable or damaged, so forget about it and compute from scratch
+            keysFor(kind).remove(key);
+            return null;
+        }
+
+        remember(name, values);
+        return values;
+    }
+
+    /**
+     * Saves the specified values as a checkpoint. The file is written under a temporary name and then
+     * renamed, so other processes never see a partly written checkpoint.
+     *
+     * @param kind   The kind of value
+     * @param key    The checkpoint's key
+     * @param values The values to save
+     */
+    synchronized void put(String kind, long key, BigInteger... values) {
+        String name = fileName(kind, key);
+        remember(name, values);
+
+        try {
+            Path temp = Files.createTempFile(directory, name, ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(temp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(values.length);
+                for (BigInteger value : values) {
+                    byte[] bytes = value.toByteArray();
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                }
+            }
+            Files.move(temp, directory.resolve(name), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            keysFor(kind).add(key);
+        } catch (IOException e) {
+            System.out.println("Could not save checkpoint " + name + ": " + e);
+        }
+    }
+
+    /**
+     * Adds values to the in-memory map, evicting the least recently used values if it grows too big.
+     */
+    private void remember(String name, BigInteger[] values) {
+        BigInteger[] old = recent.put(name, values);
+        memoryBits += bits(values) - (old == null ? 0 : bits(old));
+
+        Iterator<Map.Entry<String, BigInteger[]>> eldest = recent.entrySet().iterator();
+        while (memoryBits > memoryLimitBits && eldest.hasNext()) {
+            Map.Entry<String, BigInteger[]> entry = eldest.next();
+            if (entry.getValue() != values) { // Always keep what was just added
+                memoryBits -= bits(entry.getValue());
+                eldest.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the set of keys on disk for the specified kind, listing the directory the first time.
+     */
+    private TreeSet<Long> keysFor(String kind) {
+        TreeSet<Long> set = keys.get(kind);
+        if (set == null) {
+            set = new TreeSet<>();
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, kind + "-*.bin")) {
+                for (Path file : files) {
+                    String name = file.getFileName().toString();
+                    try {
+                        set.add(Long.parseLong(name.substring(kind.length() + 1, name.length() - 4)));
+                    } catch (NumberFormatException e) { // Not one of ours
+                    }
+                }
+            } catch (IOException e) {
+                System.out.println("Could not read checkpoint directory: " + e);
+            }
+            keys.put(kind, set);
+        }
+        return set;
+    }
+
+    private static String fileName(String kind, long key) {
+        return kind + "-" + key + ".bin";
+    }
+
+    private static long bits(BigInteger[] values) {
+        long total = 0;
+        for (BigInteger value : values) {
+            total += value.bitLength();
+        }
+        return total;
+    }
+}
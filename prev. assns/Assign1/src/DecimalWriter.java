@@ -0,0 +1,205 @@
+import java.io.Closeable;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/**
+ * Writes text and huge decimal numbers to a channel through a fixed size buffer. Numbers are converted
+ * to decimal by recursively splitting them on powers 10^(18*2^j), which is subquadratic because the
+ * splits are done with BigInteger's fast division, and the digits are streamed out as they are
+ * produced instead of being built into one giant String first.
+ *
+ * @author Ky Kartchner
+ */
+class DecimalWriter implements Closeable {
+    /**
+     * Number of decimal digits in each of the smallest pieces, which are converted as longs
+     */
+    private static final int BLOCK_DIGITS = 18;
+
+    private static final BigInteger BLOCK_POWER = BigInteger.TEN.pow(BLOCK_DIGITS);
+
+    private final WritableByteChannel channel;
+    private final boolean closeChannel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+    private final byte[] block = new byte[BLOCK_DIGITS];
+
+    /**
+     * Number of upcoming digits to drop instead of writing (used for zero padding)
+     */
+    private int skipDigits = 0;
+
+    private DecimalWriter(WritableByteChannel channel, boolean closeChannel) {
+        this.channel = channel;
+        this.closeChannel = closeChannel;
+    }
+
+    /**
+     * Creates a writer for the process's standard output. Closing it only flushes it.
+     */
+    static DecimalWriter toStdout() {
+        return new DecimalWriter(new FileOutputStream(FileDescriptor.out).getChannel(), false);
+    }
+
+    /**
+     * Creates a writer for the specified file, replacing the file if it already exists.
+     *
+     * @param file The file to write to
+     * @throws IOException If the file can't be opened for writing
+     */
+    static DecimalWriter toFile(Path file) throws IOException {
+        return new DecimalWriter(FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING), true);
+    }
+
+    /**
+     * Writes the specified text.
+     *
+     * @param text The text to write
+     */
+    void print(String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        for (int off = 0; off < bytes.length; ) {
+            ensureSpace(1);
+            int len = Math.min(buffer.remaining(), bytes.length - off);
+            buffer.put(bytes, off, len);
+            off += len;
+        }
+    }
+
+    /**
+     * Writes the specified number in decimal.
+     *
+     * @param value The number to write
+     */
+    void printDecimal(BigInteger value) throws IOException {
+        if (value.signum() < 0) {
+            print("-");
+            value = value.negate();
+        }
+
+        ArrayList<BigInteger> powers = powersFor(value);
+        writeDigits(value, powers, powers.size() - 2, false);
+    }
+
+    /**
+     * Writes the specified number in decimal with a decimal point placed before the last fractionDigits
+     * digits, i.e. value / 10^fractionDigits.
+     *
+     * @param value          The unscaled number to write (value >= 0)
+     * @param fractionDigits The number of digits after the decimal point
+     */
+    void printDecimal(BigInteger value, int fractionDigits) throws IOException {
+        if (fractionDigits == 0) {
+            printDecimal(value);
+            return;
+        }
+
+        BigInteger scale = BigInteger.TEN.pow(fractionDigits);
+        BigInteger[] parts = value.divideAndRemainder(scale);
+        printDecimal(parts[0]);
+        print(".");
+
+        // Adding 10^fractionDigits gives exactly fractionDigits + 1 digits, so dropping the leading 1
+        // leaves the fraction with its leading zeros:
+        skipDigits = 1;
+        printDecimal(parts[1].add(scale));
+    }
+
+    /**
+     * Writes everything buffered so far to the channel.
+     */
+    void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Flushes the writer, and closes the channel unless it is standard output.
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+        if (closeChannel) {
+            channel.close();
+        }
+    }
+
+    /**
+     * Builds the list of powers 10^18, 10^36, 10^72... up to the first power that is larger than value.
+     */
+    private static ArrayList<BigInteger> powersFor(BigInteger value) {
+        ArrayList<BigInteger> powers = new ArrayList<>();
+        powers.add(BLOCK_POWER);
+        while (powers.get(powers.size() - 1).compareTo(value) <= 0) {
+            BigInteger last = powers.get(powers.size() - 1);
+            powers.add(NttMultiplier.multiply(last, last));
+        }
+        return powers;
+    }
+
+    /**
+     * Recursively writes value, which must be less than powers[level + 1] (or 10^18 when level is -1).
+     *
+     * @param pad If true, write exactly 18 * 2^(level + 1) digits including leading zeros
+     */
+    private void writeDigits(BigInteger value, ArrayList<BigInteger> powers, int level, boolean pad)
+            throws IOException {
+        if (level < 0) {
+            writeBlock(value.longValue(), pad);
+            return;
+        }
+
+        BigInteger[] parts = value.divideAndRemainder(powers.get(level));
+        if (pad || parts[0].signum() != 0) {
+            writeDigits(parts[0], powers, level - 1, pad);
+            writeDigits(parts[1], powers, level - 1, true);
+        } else {
+            writeDigits(parts[1], powers, level - 1, false);
+        }
+    }
+
+    /**
+     * Writes a number less than 10^18, padded with zeros to 18 digits if pad is true.
+     */
+    private void writeBlock(long value, boolean pad) throws IOException {
+        int start = BLOCK_DIGITS;
+        do {
+            block[--start] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+
+        if (pad) {
+            while (start > 0) {
+                block[--start] = '0';
+            }
+        }
+
+        int skip = Math.min(skipDigits, BLOCK_DIGITS - start);
+        skipDigits -= skip;
+        start += skip;
+
+        ensureSpace(BLOCK_DIGITS);
+        buffer.put(block, start, BLOCK_DIGITS - start);
+    }
+
+    /**
+     * Flushes the buffer if it has less than the specified number of bytes free.
+     */
+    private void ensureSpace(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Sums the Taylor series for 'e' (1/0! + 1/1! + ... + 1/(n-1)!) with binary splitting. The series is
+ * reduced to a single fraction P/Q using only big integer multiplications, so only one division is
+ * needed at the very end, at whatever precision is wanted. Independent halves of the series are
+ * combined in parallel on a ForkJoinPool.
+ *
+ * @author Ky Kartchner
+ */
+class EulerSeries {
+    /**
+     * Ranges with fewer terms than this are combined on the current thread
+     */
+    private static final int PARALLEL_THRESHOLD = 1 << 10;
+
+    /**
+     * Sums the first n terms of the series and truncates the result to the specified number of
+     * digits after the decimal point.
+     *
+     * @param n      The number of terms to sum (n >= 1)
+     * @param digits The number of digits after the decimal point to keep
+     * @return 1/0! + 1/1! + ... + 1/(n-1)! truncated to digits decimal places
+     */
+    static BigDecimal compute(int n, int digits) {
+        return compute(n, digits, null);
+    }
+
+    /**
+     * Sums the first n terms of the series, starting from the nearest partial sum saved in the cache
+     * and saving new checkpoints, and truncates the result to the specified number of digits.
+     *
+     * @param n      The number of terms to sum (n >= 1)
+     * @param digits The number of digits after the decimal point to keep
+     * @param cache  The checkpoint cache to use, or null to compute from scratch
+     * @return 1/0! + 1/1! + ... + 1/(n-1)! truncated to digits decimal places
+     */
+    static BigDecimal compute(int n, int digits, CheckpointCache cache) {
+        // 1/1! + ... + 1/(n-1)! = P/Q, the 1/0! term is added below
+        BigInteger[] pq = cache == null ? split(0, n - 1)
+                : cache.computeRange("e", n - 1, (a, b) -> split((int) a, (int) b), EulerSeries::combine);
+
+        BigInteger numerator = NttMultiplier.multiply(pq[0].add(pq[1]), BigInteger.TEN.pow(digits));
+        return new BigDecimal(numerator.divide(pq[1]), digits);
+    }
+
+    /**
+     * Reduces the terms 1/(a+1) + 1/((a+1)(a+2)) + ... + 1/((a+1)...b) to a fraction.
+     *
+     * @param a The term before the first term in the range
+     * @param b The last term in the range
+     * @return {P, Q} where the sum is P/Q and Q = (a+1)(a+2)...b
+     */
+    static BigInteger[] split(int a, int b) {
+        if (b <= a) {
+            return new BigInteger[]{BigInteger.ZERO, BigInteger.ONE};
+        }
+
+        return ForkJoinPool.commonPool().invoke(new SplitTask(a, b));
+    }
+
+    /**
+     * Combines the fractions of two adjacent ranges: with the left range [a, m] = P1/Q1 and the
+     * right range [m, b] = P2/Q2, the whole range is (P1*Q2 + P2)/(Q1*Q2).
+     *
+     * @return {P, Q} for the combined range
+     */
+    static BigInteger[] combine(BigInteger[] left, BigInteger[] right) {
+        return new BigInteger[]{NttMultiplier.multiply(left[0], right[1]).add(right[0]),
+                NttMultiplier.multiply(left[1], right[1])};
+    }
+
+    /**
+     * Splits the range of terms in half and forks the halves while the range is large enough
+     * to be worth running in parallel.
+     */
+    private static class SplitTask extends RecursiveTask<BigInteger[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final int a;
+        private final int b;
+
+        SplitTask(int a, int b) {
+            this.a = a;
+            this.b = b;
+        }
+
+        @Override
+        protected BigInteger[] compute() {
+            if (b - a < PARALLEL_THRESHOLD) {
+                return splitSequential(a, b);
+            }
+
+            int m = (int) (((long) a + b) >>> 1);
+            SplitTask left = new SplitTask(a, m);
+            left.fork();
+            BigInteger[] right = new SplitTask(m, b).compute();
+
+            return combine(left.join(), right);
+        }
+    }
+
+    /**
+     * Sequential binary splitting over the range (a, b].
+     */
+    private static BigInteger[] splitSequential(int a, int b) {
+        if (b - a == 1) {
+            return new BigInteger[]{BigInteger.ONE, BigInteger.valueOf(b)};
+        }
+
+        int m = (int) (((long) a + b) >>> 1);
+        return combine(splitSequential(a, m), splitSequential(m, b));
+    }
+}
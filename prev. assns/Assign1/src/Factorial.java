@@ -0,0 +1,126 @@
+import java.math.BigInteger;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Computes factorials by multiplying the numbers 1..n together in a balanced product tree, so that
+ * the big multiplications are always between numbers of similar size (which is where the subquadratic
+ * BigInteger multiply algorithms pay off). The factors of two are pulled out of every number and
+ * added back with a single shift at the end, and independent subtrees are multiplied in parallel
+ * on a ForkJoinPool.
+ *
+ * @author Ky Kartchner
+ */
+class Factorial {
+    /**
+     * Ranges with fewer numbers than this are multiplied on the current thread
+     */
+    private static final int PARALLEL_THRESHOLD = 1 << 12;
+
+    /**
+     * Ranges with fewer numbers than this are multiplied in a simple loop instead of split further
+     */
+    private static final int LEAF_SIZE = 16;
+
+    /**
+     * Computes n!
+     *
+     * @param n The value to use for n (n >= 0)
+     * @return n!
+     */
+    static BigInteger compute(int n) {
+        return product(1, n);
+    }
+
+    /**
+     * Computes n!, starting from the nearest factorial saved in the cache and saving new checkpoints.
+     *
+     * @param n     The value to use for n (n >= 0)
+     * @param cache The checkpoint cache to use, or null to compute from scratch
+     * @return n!
+     */
+    static BigInteger compute(int n, CheckpointCache cache) {
+        if (cache == null) {
+            return compute(n);
+        }
+
+        // (lo, hi] holds lo! * (lo+1) * ... * hi, so combining is a multiplication:
+        return cache.computeRange("fac", n,
+                (lo, hi) -> new BigInteger[]{product((int) lo + 1, (int) hi)},
+                (left, right) -> new BigInteger[]{NttMultiplier.multiply(left[0], right[0])})[0];
+    }
+
+    /**
+     * Computes the product of all numbers in [lo, hi], i.e. hi! / (lo-1)!
+     *
+     * @param lo The first number of the range (lo >= 1)
+     * @param hi The last number of the range
+     * @return lo * (lo + 1) * ... * hi, or 1 if the range is empty
+     */
+    static BigInteger product(int lo, int hi) {
+        if (hi < lo) {
+            return BigInteger.ONE;
+        }
+
+        BigInteger oddProduct = ForkJoinPool.commonPool().invoke(new ProductTask(lo, hi));
+        return oddProduct.shiftLeft((int) (twos(hi) - twos(lo - 1)));
+    }
+
+    /**
+     * Returns the number of factors of two in m!, which is m - (number of one bits in m).
+     */
+    private static long twos(int m) {
+        return m - Integer.bitCount(m);
+    }
+
+    /**
+     * Multiplies the odd parts of the numbers in [lo, hi] together, splitting the range in half and
+     * forking the halves while the range is large enough to be worth running in parallel.
+     */
+    private static class ProductTask extends RecursiveTask<BigInteger> {
+        private static final long serialVersionUID = 1L;
+
+        private final int lo;
+        private final int hi;
+
+        ProductTask(int lo, int hi) {
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected BigInteger compute() {
+            if (hi - lo < PARALLEL_THRESHOLD) {
+                return oddProduct(lo, hi);
+            }
+
+            int mid = (int) (((long) lo + hi) >>> 1);
+            ProductTask left = new ProductTask(lo, mid);
+            left.fork();
+            BigInteger right = new ProductTask(mid + 1, hi).compute();
+
+            return NttMultiplier.multiply(left.join(), right);
+        }
+    }
+
+    /**
+     * Sequential product tree over the odd parts of the numbers in [lo, hi].
+     */
+    private static BigInteger oddProduct(int lo, int hi) {
+        if (hi - lo < LEAF_SIZE) {
+            BigInteger result = BigInteger.ONE;
+            long acc = 1;
+            for (long i = lo; i <= hi; ++i) {
+                if (acc >= (1L << 32)) { // acc * (i < 2^31) would overflow a long, so flush it first
+                    result = result.multiply(BigInteger.valueOf(acc));
+                    acc = 1;
+                }
+                acc *= i >> Long.numberOfTrailingZeros(i);
+            }
+            return result.multiply(BigInteger.valueOf(acc));
+        }
+
+        int mid = (int) (((long) lo + hi) >>> 1);
+        return oddProduct(lo, mid).multiply(oddProduct(mid + 1, hi));
+    }
+}
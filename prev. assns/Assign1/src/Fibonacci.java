@@ -0,0 +1,90 @@
+import java.math.BigInteger;
+
+/**
+ * Computes Fibonacci numbers using the fast doubling identities
+ * F(2k) = F(k) * (2F(k+1) - F(k)) and F(2k+1) = F(k)^2 + F(k+1)^2,
+ * which follow from the matrix identity [[1,1],[1,0]]^n = [[F(n+1),F(n)],[F(n),F(n-1)]].
+ * Only O(log n) big multiplications are needed instead of n big additions.
+ *
+ * @author Ky Kartchner
+ */
+class Fibonacci {
+    /**
+     * Computes the nth Fibonacci number, where F(0) = 0 and F(1) = 1.
+     *
+     * @param n The index of the Fibonacci number to compute (n >= 0)
+     * @return F(n)
+     */
+    static BigInteger compute(long n) {
+        return pair(n)[0];
+    }
+
+    /**
+     * Computes the pair of consecutive Fibonacci numbers F(n) and F(n+1).
+     *
+     * @param n The index of the first number of the pair (n >= 0)
+     * @return {F(n), F(n+1)}
+     */
+    static BigInteger[] pair(long n) {
+        // Starting from k = 0, walk all of the bits of n from the most significant down:
+        return doubleFrom(BigInteger.ZERO, BigInteger.ONE, n, 64 - Long.numberOfLeadingZeros(n));
+    }
+
+    /**
+     * Computes F(n) and F(n+1), resuming from the cached pair with the longest matching prefix of n's
+     * bits (F(n >>> s), F((n >>> s) + 1)) and saving the result as a new pair.
+     *
+     * @param n     The index of the first number of the pair (n >= 0)
+     * @param cache The checkpoint cache to use, or null to compute from scratch
+     * @return {F(n), F(n+1)}
+     */
+    static BigInteger[] pair(long n, CheckpointCache cache) {
+        if (cache == null || n < CheckpointCache.MIN_CACHED) {
+            return pair(n);
+        }
+
+        BigInteger[] result = null;
+        for (int s = 0; result == null && (n >>> s) >= CheckpointCache.MIN_CACHED; ++s) {
+            BigInteger[] cached = cache.get("fib", n >>> s);
+            if (cached != null) {
+                if (s == 0) {
+                    return cached;
+                }
+                result = doubleFrom(cached[0], cached[1], n, s);
+            }
+        }
+
+        if (result == null) {
+            result = pair(n);
+        }
+        cache.put("fib", n, result);
+        return result;
+    }
+
+    /**
+     * Continues the doubling from (F(k), F(k+1)) where k is n without its lowest bits.
+     *
+     * @param a    F(k)
+     * @param b    F(k+1)
+     * @param n    The index of the first number of the pair to compute
+     * @param bits The number of low bits of n that k is missing
+     * @return {F(n), F(n+1)}
+     */
+    private static BigInteger[] doubleFrom(BigInteger a, BigInteger b, long n, int bits) {
+        // Walk the remaining bits of n from the most significant down; each step doubles k, then adds the bit:
+        for (int bit = bits - 1; bit >= 0; --bit) {
+            BigInteger c = NttMultiplier.multiply(a, b.shiftLeft(1).subtract(a));               // F(2k)
+            BigInteger d = NttMultiplier.multiply(a, a).add(NttMultiplier.multiply(b, b)); // F(2k+1)
+
+            if (((n >>> bit) & 1) == 0) { // k = 2k
+                a = c;
+                b = d;
+            } else {                      // k = 2k + 1
+                a = d;
+                b = c.add(d);
+            }
+        }
+
+        return new BigInteger[]{a, b};
+    }
+}
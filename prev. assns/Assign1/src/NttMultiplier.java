@@ -0,0 +1,379 @@
+import java.math.BigInteger;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.IntStream;
+
+/**
+ * Multiplies very large BigIntegers with number theoretic transforms (NTTs), which take O(n log n) time
+ * instead of the O(n^1.47) of the Toom-Cook multiplication BigInteger uses for large numbers.
+ *
+ * The numbers are split into 16-bit limbs and convolved modulo two NTT friendly primes; the primes'
+ * product is larger than any convolution term can be, so the exact terms are recovered with the Chinese
+ * remainder theorem. The transforms split into independent halves that are run in parallel on the
+ * ForkJoinPool, and the long butterfly loops above them are split into chunks that run in parallel too.
+ *
+ * Numbers smaller than the threshold (set in bits with -Dassign1.ntt.threshold, 2^20 by default) are
+ * passed to BigInteger.multiply, which is faster for them.
+ *
+ * @author Ky Kartchner
+ */
+class NttMultiplier {
+    /**
+     * Both numbers must have at least this many bits for the NTT to be used
+     */
+    static final int THRESHOLD_BITS = Integer.getInteger("assign1.ntt.threshold", 1 << 20);
+
+    private static final int LIMB_BITS = 16;
+
+    /**
+     * The primes are c * 2^k + 1 so they have 2^k-th roots of unity; with 16-bit limbs and at most
+     * 2^26 of them, every convolution term is below 2^58, which is less than P1 * P2
+     */
+    private static final long P1 = 2013265921L; // 15 * 2^27 + 1
+    private static final long G1 = 31;          // Primitive root mod P1
+    private static final long P2 = 469762049L;  // 7 * 2^26 + 1
+    private static final long G2 = 3;           // Primitive root mod P2
+    private static final int MAX_LENGTH = 1 << 26;
+
+    private static final long P1_INVERSE_MOD_P2 = power(P1 % P2, P2 - 2, P2);
+
+    /**
+     * Transforms of at most this many values are done on one thread, in stages over the whole block
+     */
+    private static final int SEQUENTIAL_SIZE = 1 << 12;
+
+    /**
+     * Loops with fewer iterations than this are run on the current thread
+     */
+    private static final int PARALLEL_SIZE = 1 << 15;
+
+    /**
+     * Multiplies two numbers, using the NTT if both are at least THRESHOLD_BITS long.
+     *
+     * @param a The first number
+     * @param b The second number
+     * @return a * b
+     */
+    static BigInteger multiply(BigInteger a, BigInteger b) {
+        if (a.bitLength() < THRESHOLD_BITS || b.bitLength() < THRESHOLD_BITS) {
+            return a.multiply(b);
+        }
+        return multiplyNtt(a, b);
+    }
+
+    /**
+     * Multiplies two numbers with the NTT regardless of their size. Products too big for the primes
+     * (more than 2^30 bits) fall back to BigInteger.multiply.
+     *
+     * @param a The first number
+     * @param b The second number
+     * @return a * b
+     */
+    static BigInteger multiplyNtt(BigInteger a, BigInteger b) {
+        if (a.signum() == 0 || b.signum() == 0) {
+            return BigInteger.ZERO;
+        }
+
+        int[] limbsA = toLimbs(a.abs());
+        int[] limbsB = a.equals(b) ? null : toLimbs(b.abs()); // null means squaring
+        int productLimbs = limbsA.length + (limbsB == null ? limbsA.length : limbsB.length);
+
+        int n = Integer.highestOneBit(productLimbs - 1) << 1;
+        if (n > MAX_LENGTH) {
+            return a.multiply(b);
+        }
+
+        int[] residues1 = convolve(limbsA, limbsB, n, P1, G1);
+        int[] residues2 = convolve(limbsA, limbsB, n, P2, G2);
+
+        BigInteger product = fromResidues(residues1, residues2, productLimbs);
+        return a.signum() == b.signum() ? product : product.negate();
+    }
+
+    /**
+     * Computes the cyclic convolution of the limbs modulo p.
+     *
+     * @param a The first number's limbs
+     * @param b The second number's limbs, or null to square the first
+     * @param n The transform length, a power of two at least as long as the product
+     * @param p The prime modulus
+     * @param g A primitive root mod p
+     * @return The convolution terms modulo p
+     */
+    private static int[] convolve(int[] a, int[] b, int n, long p, long g) {
+        Modulus mod = new Modulus(p, g, n);
+
+        int[] fa = new int[n];
+        System.arraycopy(a, 0, fa, 0, a.length);
+        ForkJoinPool.commonPool().invoke(new ForwardTask(fa, 0, n, mod));
+
+        int[] fb = fa;
+        if (b != null) {
+            fb = new int[n];
+            System.arraycopy(b, 0, fb, 0, b.length);
+            ForkJoinPool.commonPool().invoke(new ForwardTask(fb, 0, n, mod));
+        }
+
+        // Multiplying in Montgomery form leaves a factor of 1/R in every term, which is removed along with
+        // the factor of n the inverse transform adds by scaling with R^2 / n at the end:
+        int[] product = fa;
+        int[] other = fb;
+        parallelRange(n, (from, to) -> {
+            for (int i = from; i < to; ++i) {
+                product[i] = (int) mod.reduce((long) product[i] * other[i]);
+            }
+        });
+
+        ForkJoinPool.commonPool().invoke(new InverseTask(product, 0, n, mod));
+
+        long r = (1L << 32) % p;
+        long scale = power(n, p - 2, p) * (r * r % p) % p;
+        parallelRange(n, (from, to) -> {
+            for (int i = from; i < to; ++i) {
+                product[i] = (int) mod.reduce(product[i] * scale);
+            }
+        });
+
+        return product;
+    }
+
+    /**
+     * A prime modulus with the constants for Montgomery multiplication (with R = 2^32), which replaces
+     * the slow % in every butterfly with multiplications and a shift, and the roots of unity for every
+     * transform length up to n in Montgomery form.
+     */
+    private static class Modulus {
+        final long p;
+        final long negativeInverse; // -1/p mod 2^32
+
+        /**
+         * roots[half + j] is w^j for a primitive (2 * half)-th root of unity w, and inverseRoots[half + j]
+         * is w^-j; both in Montgomery form
+         */
+        final int[] roots;
+        final int[] inverseRoots;
+
+        Modulus(long p, long g, int n) {
+            this.p = p;
+
+            long inverse = 1; // Newton's iteration for 1/p mod 2^32, doubling the correct bits each time
+            for (int i = 0; i < 5; ++i) {
+                inverse = inverse * (2 - p * inverse) & 0xFFFFFFFFL;
+            }
+            this.negativeInverse = (1L << 32) - inverse;
+
+            roots = new int[Math.max(2, n)];
+            inverseRoots = new int[Math.max(2, n)];
+            long r = (1L << 32) % p;
+            for (int half = 1; half < n; half <<= 1) {
+                long w = power(g, (p - 1) / (2L * half), p);
+                long wInverse = power(w, p - 2, p);
+
+                long power = r; // 1 in Montgomery form
+                long inversePower = r;
+                for (int j = 0; j < half; ++j) {
+                    roots[half + j] = (int) power;
+                    inverseRoots[half + j] = (int) inversePower;
+                    power = power * w % p;
+                    inversePower = inversePower * wInverse % p;
+                }
+            }
+        }
+
+        /**
+         * Montgomery reduction: returns t / 2^32 mod p for 0 <= t < p * 2^32.
+         */
+        long reduce(long t) {
+            long m = (t & 0xFFFFFFFFL) * negativeInverse & 0xFFFFFFFFL;
+            long result = (t + m * p) >>> 32; // The sum can pass 2^63, but not 2^64, so shift it as unsigned
+            return result >= p ? result - p : result;
+        }
+    }
+
+    /**
+     * Decimation-in-frequency transform of values[offset, offset + size), leaving the result in
+     * bit-reversed order. After the first stage the two halves are independent transforms, so they are
+     * done recursively: in parallel when they are big, and within the cache when they are small.
+     */
+    private static class ForwardTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] values;
+        private final int offset;
+        private final int size;
+        private final Modulus mod;
+
+        ForwardTask(int[] values, int offset, int size, Modulus mod) {
+            this.values = values;
+            this.offset = offset;
+            this.size = size;
+            this.mod = mod;
+        }
+
+        @Override
+        protected void compute() {
+            if (size <= SEQUENTIAL_SIZE) {
+                for (int half = size >>> 1; half >= 1; half >>>= 1) {
+                    for (int start = offset; start < offset + size; start += 2 * half) {
+                        forwardButterflies(values, start, 0, half, half, mod);
+                    }
+                }
+                return;
+            }
+
+            int half = size >>> 1;
+            parallelRange(half, (from, to) -> forwardButterflies(values, offset, from, to, half, mod));
+            invokeAll(new ForwardTask(values, offset, half, mod), new ForwardTask(values, offset + half, half, mod));
+        }
+    }
+
+    /**
+     * Decimation-in-time inverse transform (without the 1/n scaling) of values[offset, offset + size)
+     * given in bit-reversed order, leaving the result in natural order. The halves are transformed
+     * first and then combined, mirroring ForwardTask.
+     */
+    private static class InverseTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] values;
+        private final int offset;
+        private final int size;
+        private final Modulus mod;
+
+        InverseTask(int[] values, int offset, int size, Modulus mod) {
+            this.values = values;
+            this.offset = offset;
+            this.size = size;
+            this.mod = mod;
+        }
+
+        @Override
+        protected void compute() {
+            if (size <= SEQUENTIAL_SIZE) {
+                for (int half = 1; half < size; half <<= 1) {
+                    for (int start = offset; start < offset + size; start += 2 * half) {
+                        inverseButterflies(values, start, 0, half, half, mod);
+                    }
+                }
+                return;
+            }
+
+            int half = size >>> 1;
+            invokeAll(new InverseTask(values, offset, half, mod), new InverseTask(values, offset + half, half, mod));
+            parallelRange(half, (from, to) -> inverseButterflies(values, offset, from, to, half, mod));
+        }
+    }
+
+    /**
+     * Runs forward butterflies j in [from, to) on the block starting at start whose halves are half long:
+     * (u, v) becomes (u + v, (u - v) * w^j).
+     */
+    private static void forwardButterflies(int[] values, int start, int from, int to, int half, Modulus mod) {
+        long p = mod.p;
+        int[] roots = mod.roots;
+        for (int j = from; j < to; ++j) {
+            long u = values[start + j];
+            long v = values[start + j + half];
+            long sum = u + v;
+            values[start + j] = (int) (sum >= p ? sum - p : sum);
+            values[start + j + half] = (int) mod.reduce((u - v + p) * roots[half + j]);
+        }
+    }
+
+    /**
+     * Runs inverse butterflies j in [from, to) on the block starting at start whose halves are half long:
+     * (u, v) becomes (u + v * w^-j, u - v * w^-j).
+     */
+    private static void inverseButterflies(int[] values, int start, int from, int to, int half, Modulus mod) {
+        long p = mod.p;
+        int[] inverseRoots = mod.inverseRoots;
+        for (int j = from; j < to; ++j) {
+            long u = values[start + j];
+            long v = mod.reduce((long) values[start + j + half] * inverseRoots[half + j]);
+            long sum = u + v;
+            values[start + j] = (int) (sum >= p ? sum - p : sum);
+            values[start + j + half] = (int) (u >= v ? u - v : u - v + p);
+        }
+    }
+
+    /**
+     * Runs the action on consecutive chunks covering [0, count), in parallel if there are enough of them.
+     */
+    private static void parallelRange(int count, RangeAction action) {
+        if (count < PARALLEL_SIZE) {
+            action.run(0, count);
+            return;
+        }
+
+        int chunks = count / PARALLEL_SIZE;
+        IntStream.range(0, chunks).parallel().forEach(chunk ->
+                action.run(chunk * PARALLEL_SIZE, chunk == chunks - 1 ? count : (chunk + 1) * PARALLEL_SIZE));
+    }
+
+    /**
+     * Processes the indexes [from, to).
+     */
+    private interface RangeAction {
+        void run(int from, int to);
+    }
+
+    /**
+     * Splits a non-negative number into 16-bit limbs, least significant first.
+     */
+    private static int[] toLimbs(BigInteger value) {
+        byte[] bytes = value.toByteArray(); // Big-endian, possibly with a leading zero sign byte
+        int[] limbs = new int[(value.bitLength() + LIMB_BITS - 1) / LIMB_BITS];
+
+        for (int k = 0; k < limbs.length; ++k) {
+            int low = bytes.length - 1 - 2 * k;
+            int limb = bytes[low] & 0xFF;
+            if (low > 0) {
+                limb |= (bytes[low - 1] & 0xFF) << 8;
+            }
+            limbs[k] = limb;
+        }
+        return limbs;
+    }
+
+    /**
+     * Recovers the exact convolution terms from their residues with the Chinese remainder theorem and
+     * propagates the carries to rebuild the product.
+     */
+    private static BigInteger fromResidues(int[] residues1, int[] residues2, int limbCount) {
+        byte[] bytes = new byte[2 * limbCount + 8]; // Big-endian, with room for the final carry
+        long carry = 0;
+
+        for (int k = 0; k < limbCount; ++k) {
+            long r1 = residues1[k];
+            long t = (residues2[k] - r1 % P2 + P2) % P2 * P1_INVERSE_MOD_P2 % P2;
+            long term = r1 + P1 * t + carry; // The term is below 2^58 and the carry below 2^44
+
+            bytes[bytes.length - 1 - 2 * k] = (byte) term;
+            bytes[bytes.length - 2 - 2 * k] = (byte) (term >>> 8);
+            carry = term >>> LIMB_BITS;
+        }
+
+        for (int i = bytes.length - 1 - 2 * limbCount; carry != 0; --i) {
+            bytes[i] = (byte) carry;
+            carry >>>= 8;
+        }
+
+        return new BigInteger(1, bytes);
+    }
+
+    /**
+     * Computes base^exponent mod m.
+     */
+    private static long power(long base, long exponent, long m) {
+        long result = 1;
+        base %= m;
+        while (exponent > 0) {
+            if ((exponent & 1) == 1) {
+                result = result * base % m;
+            }
+            base = base * base % m;
+            exponent >>= 1;
+        }
+        return result;
+    }
+}
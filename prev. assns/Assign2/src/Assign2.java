@@ -1,27 +1,100 @@
+import java.io.IOException;
 import java.lang.Runtime;
+import java.nio.file.Paths;
 import java.util.Properties;
 
 /**
  * Reports certain properties and runtime information as specified through
  * commandline arguments
  *
+ * "-watch [ms]" samples the JVM's resource use every [ms] milliseconds until
+ * stopped, or for the number of samples given with "-samples [n]"; the samples
+ * can be exported with "-export [file]" (CSV, or JSON lines for .json/.jsonl)
+ *
+ * "-cpu" reports the sockets, cores, NUMA nodes and caches; with "-cpuprofile [file]"
+ * it also writes them, with suggested thread counts and tile sizes, as a properties file
+ *
+ * "-container" reports the CPU and memory limits of the process's cgroups, how much
+ * the CPU quota has throttled it, and the CPU, memory and I/O pressure
+ *
+ * "-pid [n]" attaches to another local JVM; -mem, -java, -cpu and -watch then report
+ * on that JVM, and -pid itself reports its garbage collections and the threads using the
+ * most CPU time; "-histogram" also reports a class histogram of its heap, which makes that
+ * JVM run a full (stop-the-world) collection first
+ *
+ * "-jit" reports the startup timings, the JIT compile time, the classes loaded and the
+ * code cache use; with "-warmup [rounds]" it also runs a workload to show the JIT settling
+ *
+ * "-calibrate" measures memory bandwidth, load latency by working set size, core-to-core
+ * latency and allocation throughput, printing a table and a JSON profile, which is also
+ * written to the file given with "-json [file]"
+ *
  * @author Ky Kartchner
  * @version 1.0
  */
 public class Assign2 {
+    /**
+     * Number of recent samples -watch keeps for its summary
+     */
+    private static final int WATCH_BUFFER_SIZE = 4096;
+
     public static void main(String[] args) {
+        long mainNanos = System.nanoTime();
         Runtime runtime = Runtime.getRuntime();
         Properties properties = System.getProperties();
 
+        // Options for -watch can be given anywhere, so read them first:
+        long samples = 0;
+        String exportFile = null;
+        String profileFile = null;
+        String pid = null;
+        long warmupRounds = 0;
+        String jsonFile = null;
+        for (int i = 0; i < args.length - 1; ++i) {
+            if (args[i].equals("-samples")) {
+                samples = parseNumber(args[++i], 0);
+            } else if (args[i].equals("-export")) {
+                exportFile = args[++i];
+            } else if (args[i].equals("-cpuprofile")) {
+                profileFile = args[++i];
+            } else if (args[i].equals("-pid")) {
+                pid = args[++i];
+            } else if (args[i].equals("-warmup")) {
+                warmupRounds = parseNumber(args[++i], 1);
+            } else if (args[i].equals("-json")) {
+                jsonFile = args[++i];
+            }
+        }
+
+        RemoteJvm jvm = null;
+        if (pid != null) {
+            try {
+                jvm = RemoteJvm.attach(pid);
+            } catch (IOException e) {
+                System.out.println("Could not attach to process " + pid + ": " + e.getMessage());
+                return;
+            }
+        }
+
         System.out.println();
+        long firstOutputNanos = System.nanoTime();
 
-        for (String arg : args) {
+        for (int i = 0; i < args.length; ++i) {
+            String arg = args[i];
             switch (arg) {
                 case "-cpu":
-                    // Report the number of CPUs (physical and logical) available:
-                    System.out.println("Processors   : " + runtime.availableProcessors());
+                    if (jvm != null) {
+                        inspect(jvm, arg);
+                        break;
+                    }
+                    // Report the number of CPUs (physical and logical) available, and how they share caches:
+                    cpu(profileFile);
                     break;
                 case "-mem":
+                    if (jvm != null) {
+                        inspect(jvm, arg);
+                        break;
+                    }
                     // Report the available free memory, total memory, and max memory:
                     System.out.println("Free Memory  :\t" + String.format("%,12d", runtime.freeMemory()));
                     System.out.println("Total Memory :\t" + String.format("%,12d", runtime.totalMemory()));
@@ -38,6 +111,10 @@ public class Assign2 {
                     System.out.println("OS Version          : " + properties.getProperty("os.version"));
                     break;
                 case "-java":
+                    if (jvm != null) {
+                        inspect(jvm, arg);
+                        break;
+                    }
                     // Report the following items about the JVM:
                     //   Java vendor
                     System.out.println("Java Vendor         : " + properties.getProperty("java.vendor"));
@@ -50,6 +127,51 @@ public class Assign2 {
                     //   Java VM name:
                     System.out.println("Java VM Name        : " + properties.getProperty("java.vm.name"));
                     break;
+                case "-container":
+                    // Report the cgroup limits that the JVM actually runs under:
+                    ContainerLimits.read().print();
+                    break;
+                case "-jit":
+                    // Report the time spent starting up, loading classes and compiling:
+                    jit(mainNanos, firstOutputNanos, warmupRounds);
+                    break;
+                case "-calibrate":
+                    // Measure the memory system, the cores and the allocator:
+                    calibrate(jsonFile);
+                    break;
+                case "-watch":
+                    // Report the resource use periodically:
+                    long interval = i + 1 < args.length ? parseNumber(args[++i], 1) : -1;
+                    if (interval <= 0) {
+                        System.out.println("-watch must be followed by the interval in milliseconds");
+                    } else if (samples < 0) {
+                        System.out.println("-samples must be followed by the number of samples to take");
+                    } else {
+                        watch(interval, samples, exportFile, jvm);
+                    }
+                    break;
+                case "-samples":
+                case "-export":
+                case "-cpuprofile":
+                case "-warmup":
+                case "-json":
+                    ++i; // Already read above
+                    break;
+                case "-histogram":
+                    // Report the classes with the most instances on the attached JVM's heap:
+                    if (jvm != null) {
+                        inspect(jvm, arg);
+                    } else {
+                        System.out.println("-histogram needs a JVM to attach to with -pid [n]");
+                    }
+                    break;
+                case "-pid":
+                    // Report the attached JVM's garbage collections and threads:
+                    ++i;
+                    if (jvm != null) {
+                        inspect(jvm, arg);
+                    }
+                    break;
                 default:
                     System.out.println("unknown command: " + arg);
                     break;
@@ -57,5 +179,157 @@ public class Assign2 {
         }
 
         System.out.println();
+
+        if (jvm != null) {
+            try {
+                jvm.close();
+            } catch (IOException e) {
+                // The other JVM may already have exited
+            }
+        }
+    }
+
+    /**
+     * Prints the startup timings and the JIT and class loading figures, running the warm-up workload
+     * first if it was asked for.
+     *
+     * @param mainNanos        System.nanoTime() when main was entered
+     * @param firstOutputNanos System.nanoTime() just after main's first output
+     * @param warmupRounds     The number of warm-up rounds to run, 0 for none, or -1 if the count was invalid
+     */
+    private static void jit(long mainNanos, long firstOutputNanos, long warmupRounds) {
+        JitReport report = new JitReport();
+        report.printStartup(mainNanos, firstOutputNanos);
+        report.printCompilation();
+        if (warmupRounds > 0) {
+            System.out.println();
+            report.warmUp((int) Math.min(warmupRounds, 10_000));
+            System.out.println();
+            report.printCompilation();
+        } else if (warmupRounds < 0) {
+            System.out.println("-warmup must be followed by the number of rounds");
+        }
+    }
+
+    /**
+     * Runs the calibration probes and prints the JSON profile, writing it to a file if one was given.
+     *
+     * @param jsonFile The file to write the profile to, or null to only print it
+     */
+    private static void calibrate(String jsonFile) {
+        Calibration calibration = new Calibration();
+        calibration.run();
+        System.out.println();
+        System.out.println(calibration.json());
+        if (jsonFile != null) {
+            try {
+                calibration.writeJson(Paths.get(jsonFile));
+            } catch (IOException e) {
+                System.out.println("Could not write the profile to " + jsonFile + ": " + e);
+            }
+        }
+    }
+
+    /**
+     * Prints one of the reports about another JVM.
+     *
+     * @param jvm    The attached JVM
+     * @param report The command the report is for
+     */
+    private static void inspect(RemoteJvm jvm, String report) {
+        try {
+            switch (report) {
+                case "-cpu":
+                    jvm.printCpu();
+                    break;
+                case "-mem":
+                    jvm.printMemory();
+                    break;
+                case "-java":
+                    jvm.printJava();
+                    break;
+                case "-histogram":
+                    jvm.printHistogram();
+                    break;
+                default:
+                    jvm.printGarbageCollectors();
+                    System.out.println();
+                    jvm.printThreads();
+                    break;
+            }
+        } catch (IOException e) {
+            System.out.println("Lost the connection to the JVM: " + e);
+        }
+    }
+
+    /**
+     * Prints the processor topology, and writes it to the profile file if one was given.
+     *
+     * @param profileFile The file to write the profile to, or null to only print it
+     */
+    private static void cpu(String profileFile) {
+        CpuTopology topology = CpuTopology.read();
+        topology.print();
+        if (profileFile != null) {
+            try {
+                topology.writeProfile(Paths.get(profileFile));
+                System.out.println("Profile      : " + profileFile);
+            } catch (IOException e) {
+                System.out.println("Could not write the profile to " + profileFile + ": " + e);
+            }
+        }
+    }
+
+    /**
+     * Samples the JVM's resource use at the specified interval, printing a summary when done or when the
+     * JVM is stopped (e.g. with Ctrl-C).
+     *
+     * @param intervalMillis The time between samples
+     * @param samples        The number of samples to take, or 0 to sample until stopped
+     * @param exportFile     The file to export the samples to, or null to not export them
+     * @param jvm            The JVM to watch, or null to watch this one
+     */
+    private static void watch(long intervalMillis, long samples, String exportFile, RemoteJvm jvm) {
+        ResourceWatcher watcher;
+        try {
+            watcher = jvm == null ? new ResourceWatcher(WATCH_BUFFER_SIZE)
+                    : ResourceWatcher.forConnection(WATCH_BUFFER_SIZE, jvm.connection());
+        } catch (IOException e) {
+            System.out.println("Could not watch the JVM: " + e);
+            return;
+        }
+
+        try {
+            if (exportFile != null) {
+                watcher.exportTo(Paths.get(exportFile));
+            }
+        } catch (IOException e) {
+            System.out.println("Could not export to " + exportFile + ": " + e);
+        }
+
+        Thread summary = new Thread(watcher::finish);
+        Runtime.getRuntime().addShutdownHook(summary);
+        try {
+            watcher.watch(intervalMillis, samples);
+            Runtime.getRuntime().removeShutdownHook(summary);
+        } catch (InterruptedException e) {
+            System.out.println(e);
+        }
+    }
+
+    /**
+     * Parses a number argument.
+     *
+     * @param arg The argument to parse
+     * @param min The smallest valid value
+     * @return The number, or -1 if arg isn't a number at least as big as min
+     */
+    private static long parseNumber(String arg, long min) {
+        try {
+            long value = Long.parseLong(arg);
+            return value >= min ? value : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
     }
 }
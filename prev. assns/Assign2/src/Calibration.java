@@ -0,0 +1,297 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the machine with a few small probes: sequential and random memory bandwidth, the latency of
+ * dependent loads (pointer chasing) for working sets from a few KB up to well past the caches, the round
+ * trip time of a cache line bounced between two threads, and the allocation throughput of the JVM. Each
+ * probe is repeated for a short time and the best run is kept, as the best run is the one least
+ * disturbed by the OS, GC, and JIT.
+ *
+ * @author Ky Kartchner
+ */
+class Calibration {
+    private static final double GB = 1024.0 * 1024.0 * 1024.0;
+
+    /**
+     * Each probe repeats for at least this long and keeps its best run
+     */
+    private static final long PROBE_NANOS = 300_000_000L;
+
+    /**
+     * Number of dependent loads timed for each working set size
+     */
+    private static final int CHASE_LOADS = 1 << 21;
+
+    /**
+     * Number of round trips timed for the ping-pong probe
+     */
+    private static final int PING_PONG_TRIPS = 100_000;
+
+    private final CpuTopology topology = CpuTopology.read();
+    private final StringBuilder json = new StringBuilder();
+
+    private long sink = 0; // Keeps the JIT from removing the probes' loads as dead code
+
+    /**
+     * Runs all of the probes, printing each result as it is measured.
+     */
+    void run() {
+        json.append("{\"processors\":").append(topology.available)
+                .append(",\"model\":");
+        appendString(topology.model);
+
+        // Use an array well past the largest cache, but leave the heap room to work with
+        long largestCache = 0;
+        for (CpuTopology.Cache cache : topology.caches) {
+            largestCache = Math.max(largestCache, cache.sizeBytes);
+        }
+        long bytes = Math.min(Math.max(64L << 20, 2 * largestCache), Runtime.getRuntime().maxMemory() / 4);
+        int length = Integer.highestOneBit((int) Math.min(Integer.MAX_VALUE, bytes / Long.BYTES));
+
+        System.out.printf("%-28s %12s %s\n", "Probe", "Result", "Unit");
+        bandwidth(length);
+        latency(length * 2);
+        pingPong();
+        allocation();
+        json.append('}');
+    }
+
+    /**
+     * Returns the results as a JSON object; only valid after run().
+     */
+    String json() {
+        return json.toString();
+    }
+
+    /**
+     * Writes the JSON profile to the specified file.
+     *
+     * @param file The file to write
+     * @throws IOException If the file can't be written
+     */
+    void writeJson(Path file) throws IOException {
+        Files.writeString(file, json() + System.lineSeparator());
+    }
+
+    /**
+     * Measures reading and writing an array sequentially, and reading it at random positions.
+     *
+     * @param length The length of the long array to use (a power of 2)
+     */
+    private void bandwidth(int length) {
+        long[] data = new long[length];
+        Arrays.fill(data, 1); // Touch every page before timing
+        double bytes = (double) length * Long.BYTES;
+
+        long read = best(() -> {
+            long sum = 0;
+            for (long value : data) {
+                sum += value;
+            }
+            sink += sum;
+        });
+        long write = best(() -> Arrays.fill(data, sink));
+        long random = best(() -> {
+            // A linear congruential generator picks the positions; its top bits are the well mixed ones
+            int shift = 64 - Integer.numberOfTrailingZeros(length);
+            long state = sink;
+            long sum = 0;
+            for (int i = 0; i < length; ++i) {
+                state = state * 6364136223846793005L + 1442695040888963407L;
+                sum += data[(int) (state >>> shift)];
+            }
+            sink += sum;
+        });
+
+        String size = "(" + (length * (long) Long.BYTES >> 20) + " MB)";
+        record("seq_read_gbps", "Sequential read " + size, bytes / GB / (read / 1e9), "GB/s");
+        record("seq_write_gbps", "Sequential write " + size, bytes / GB / (write / 1e9), "GB/s");
+        record("random_read_gbps", "Random 8 B reads " + size, bytes / GB / (random / 1e9), "GB/s");
+    }
+
+    /**
+     * Measures the time per load when every load depends on the one before, for working sets from 4 KB up
+     * to the specified number of ints. The chain of indices is one random cycle through the whole working
+     * set (Sattolo's algorithm), so the hardware prefetchers can't guess the next address and each load
+     * waits for the level of the memory hierarchy the working set fits in.
+     *
+     * @param maxLength The length of the largest int array to use
+     */
+    private void latency(int maxLength) {
+        json.append(",\"latency_ns\":{");
+        Random random = new Random(42);
+        for (int length = 1024; length <= maxLength; length *= 4) {
+            int[] next = new int[length];
+            for (int i = 0; i < length; ++i) {
+                next[i] = i;
+            }
+            for (int i = length - 1; i > 0; --i) { // Sattolo: swap only with earlier elements, giving one cycle
+                int j = random.nextInt(i);
+                int t = next[i];
+                next[i] = next[j];
+                next[j] = t;
+            }
+
+            long nanos = best(() -> {
+                int index = 0;
+                for (int i = 0; i < CHASE_LOADS; ++i) {
+                    index = next[index];
+                }
+                sink += index;
+            });
+
+            long bytes = (long) length * Integer.BYTES;
+            double perLoad = (double) nanos / CHASE_LOADS;
+            String label = "Load latency " + formatSize(bytes) + " (" + level(bytes) + ")";
+            System.out.printf("%-28s %12.2f %s\n", label, perLoad, "ns");
+            json.append(length == 1024 ? "" : ",").append('"').append(bytes).append("\":")
+                    .append(String.format(Locale.ROOT, "%.2f", perLoad));
+        }
+        json.append('}');
+    }
+
+    /**
+     * Measures the round trip of a cache line between two threads: each thread waits for the shared
+     * counter to reach its turn and then increments it. With one processor every handoff goes through
+     * the scheduler, so the threads yield instead of spinning.
+     */
+    private void pingPong() {
+        boolean spin = topology.available > 1;
+        int trips = spin ? PING_PONG_TRIPS : PING_PONG_TRIPS / 10;
+        AtomicLong turn = new AtomicLong();
+
+        Thread pong = new Thread(() -> {
+            for (long i = 1; i < 2L * trips; i += 2) {
+                await(turn, i, spin);
+                turn.set(i + 1);
+            }
+        });
+        pong.setDaemon(true);
+        pong.start();
+
+        long start = System.nanoTime();
+        for (long i = 0; i < 2L * trips; i += 2) {
+            await(turn, i, spin);
+            turn.set(i + 1);
+        }
+        await(turn, 2L * trips, spin);
+        double perTrip = (System.nanoTime() - start) / (double) trips;
+
+        record("ping_pong_ns", spin ? "Core-to-core round trip" : "Thread handoff (1 CPU)", perTrip, "ns");
+    }
+
+    private static void await(AtomicLong turn, long value, boolean spin) {
+        while (turn.get() != value) {
+            if (spin) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * Measures how fast this thread can allocate small short-lived arrays, using the JVM's count of the
+     * bytes the thread has allocated so the object headers and padding are included. If the JVM can't count
+     * them, only the number of objects per second is measured.
+     */
+    private void allocation() {
+        com.sun.management.ThreadMXBean threads = null;
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) {
+            threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            if (!threads.isThreadAllocatedMemorySupported()) {
+                threads = null;
+            } else if (!threads.isThreadAllocatedMemoryEnabled()) {
+                threads.setThreadAllocatedMemoryEnabled(true);
+            }
+        }
+        long id = Thread.currentThread().getId();
+        int count = 1 << 20;
+        Object[] keep = new Object[64]; // Keeps a few alive so the allocations aren't optimized away
+
+        long nanos = best(() -> {
+            for (int i = 0; i < count; ++i) {
+                keep[i & 63] = new long[4];
+            }
+        });
+        sink += keep.length;
+
+        if (threads != null) {
+            // best() ran an unknown number of rounds, so count the bytes of one more
+            long before = threads.getThreadAllocatedBytes(id);
+            for (int i = 0; i < count; ++i) {
+                keep[i & 63] = new long[4];
+            }
+            long perRound = threads.getThreadAllocatedBytes(id) - before;
+            record("alloc_gbps", "Allocation (48 B objects)", perRound / GB / (nanos / 1e9), "GB/s");
+        } else {
+            System.out.printf("%-28s %12s\n", "Allocation (48 B objects)", "n/a");
+        }
+        record("alloc_mops", "Allocation rate", count / (nanos / 1e9) / 1e6, "M objects/s");
+    }
+
+    /**
+     * Runs the probe repeatedly for at least PROBE_NANOS and at least 3 times, and returns the time of
+     * the fastest run in nanoseconds.
+     */
+    private static long best(Runnable probe) {
+        long best = Long.MAX_VALUE;
+        long end = System.nanoTime() + PROBE_NANOS;
+        for (int run = 0; run < 3 || System.nanoTime() < end; ++run) {
+            long start = System.nanoTime();
+            probe.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    /**
+     * Prints a result and adds it to the JSON profile.
+     */
+    private void record(String key, String label, double value, String unit) {
+        System.out.printf("%-28s %12.2f %s\n", label, value, unit);
+        json.append(",\"").append(key).append("\":").append(String.format(Locale.ROOT, "%.2f", value));
+    }
+
+    /**
+     * Adds a string to the JSON profile in quotes, escaping the quote, the backslash and every control
+     * character.
+     */
+    private void appendString(String text) {
+        json.append('"');
+        for (int i = 0; i < text.length(); ++i) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20 || c == 0x7f) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    /**
+     * Returns the smallest data cache the specified number of bytes fits in, or "RAM".
+     */
+    private String level(long bytes) {
+        for (CpuTopology.Cache cache : topology.caches) {
+            if (!cache.type.equals("Instruction") && bytes <= cache.sizeBytes) {
+                return cache.name();
+            }
+        }
+        return "RAM";
+    }
+
+    private static String formatSize(long bytes) {
+        return bytes >= 1 << 20 ? (bytes >> 20) + " MB" : (bytes >> 10) + " KB";
+    }
+}
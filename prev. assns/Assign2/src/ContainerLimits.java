@@ -0,0 +1,216 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the limits that the process's control groups put on it: the CPU quota and CPU set, the memory
+ * limit and current use, how often the CPU quota has throttled the group, and the pressure stall
+ * information (PSI) showing how much time tasks spent waiting for CPU, memory, and I/O. Both the unified
+ * cgroup v2 hierarchy and the separate v1 controller hierarchies are supported.
+ *
+ * @author Ky Kartchner
+ */
+class ContainerLimits {
+    private static final Path CGROUP_ROOT = Paths.get("/sys/fs/cgroup");
+    private static final double MB = 1024.0 * 1024.0;
+
+    /**
+     * Memory limits at least this large mean there is no limit (v1 reports unlimited as a huge value)
+     */
+    private static final long UNLIMITED = Long.MAX_VALUE / 2;
+
+    /**
+     * The cgroup version in use: 2, 1, or 0 if there are no cgroups
+     */
+    private final int version;
+
+    /**
+     * v1 controller name (or "" for v2) -> the group's directory
+     */
+    private final Map<String, Path> dirs = new HashMap<>();
+
+    private ContainerLimits() {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(Paths.get("/proc/self/cgroup"));
+        } catch (IOException e) {
+            version = 0;
+            return;
+        }
+
+        boolean unified = Files.exists(CGROUP_ROOT.resolve("cgroup.controllers"));
+        for (String line : lines) {
+            // Each line is "id:controllers:path", with id 0 and no controllers for v2
+            String[] fields = line.split(":", 3);
+            if (fields.length < 3) {
+                continue;
+            }
+            if (fields[1].isEmpty()) {
+                if (unified) {
+                    dirs.put("", groupDir(CGROUP_ROOT, fields[2]));
+                }
+            } else {
+                for (String controller : fields[1].split(",")) {
+                    Path mount = CGROUP_ROOT.resolve(controller);
+                    if (!Files.isDirectory(mount)) {
+                        mount = CGROUP_ROOT.resolve(fields[1]); // e.g. "cpu,cpuacct" without symlinks
+                    }
+                    if (Files.isDirectory(mount)) {
+                        dirs.put(controller, groupDir(mount, fields[2]));
+                    }
+                }
+            }
+        }
+        version = dirs.containsKey("") ? 2 : dirs.isEmpty() ? 0 : 1;
+    }
+
+    /**
+     * Finds the cgroups of this process.
+     */
+    static ContainerLimits read() {
+        return new ContainerLimits();
+    }
+
+    /**
+     * Prints the limits, the usage against them, the throttling, and the pressure.
+     */
+    void print() {
+        Runtime runtime = Runtime.getRuntime();
+        if (version == 0) {
+            System.out.println("Cgroups             : none (not Linux, or /proc isn't mounted)");
+            return;
+        }
+        System.out.println("Cgroup Version      : v" + version);
+
+        // CPU quota: v2 "quota period" (quota is "max" if unlimited), v1 separate files with -1 for unlimited
+        long quota = -1;
+        long period = 0;
+        if (version == 2) {
+            String[] max = readLine("", "cpu.max", "max 100000").split("\\s+");
+            quota = max[0].equals("max") ? -1 : parseLong(max[0], -1);
+            period = parseLong(max.length > 1 ? max[1] : "0", 0);
+        } else {
+            quota = parseLong(readLine("cpu", "cpu.cfs_quota_us", "-1"), -1);
+            period = parseLong(readLine("cpu", "cpu.cfs_period_us", "0"), 0);
+        }
+        if (quota > 0 && period > 0) {
+            System.out.printf("CPU Quota           : %.2f CPUs (%d us every %d us)\n", (double) quota / period,
+                    quota, period);
+        } else {
+            System.out.println("CPU Quota           : unlimited");
+        }
+
+        String cpus = version == 2 ? readLine("", "cpuset.cpus.effective", null)
+                : readLine("cpuset", "cpuset.effective_cpus", readLine("cpuset", "cpuset.cpus", null));
+        if (cpus != null && !cpus.isEmpty()) {
+            System.out.println("CPU Set             : " + cpus + " (" + CpuTopology.parseList(cpus).size() + " CPUs)");
+        }
+        String weight = version == 2 ? readLine("", "cpu.weight", null) : readLine("cpu", "cpu.shares", null);
+        if (weight != null) {
+            System.out.println("CPU " + (version == 2 ? "Weight          : " : "Shares          : ") + weight);
+        }
+        System.out.println("JVM Processors      : " + runtime.availableProcessors());
+
+        // Throttling: v2 reports the throttled time in microseconds, v1 in nanoseconds
+        Map<String, Long> stat = readStat(version == 2 ? "" : "cpu", "cpu.stat");
+        long periods = stat.getOrDefault("nr_periods", 0L);
+        long throttled = stat.getOrDefault("nr_throttled", 0L);
+        long throttledMicros = version == 2 ? stat.getOrDefault("throttled_usec", 0L)
+                : stat.getOrDefault("throttled_time", 0L) / 1000;
+        System.out.printf("Throttled           : %d of %d periods (%.1f%%), %.3f s in total\n", throttled, periods,
+                periods > 0 ? 100.0 * throttled / periods : 0.0, throttledMicros / 1e6);
+
+        // Memory
+        long limit = version == 2 ? parseLong(readLine("", "memory.max", "max"), Long.MAX_VALUE)
+                : parseLong(readLine("memory", "memory.limit_in_bytes", null), Long.MAX_VALUE);
+        long current = version == 2 ? parseLong(readLine("", "memory.current", null), -1)
+                : parseLong(readLine("memory", "memory.usage_in_bytes", null), -1);
+        long peak = version == 2 ? parseLong(readLine("", "memory.peak", null), -1)
+                : parseLong(readLine("memory", "memory.max_usage_in_bytes", null), -1);
+        System.out.println("Memory Limit        : " + (limit >= UNLIMITED ? "unlimited" : String.format("%,.1f MB", limit / MB)));
+        if (current >= 0) {
+            System.out.printf("Memory Current      : %,.1f MB%s\n", current / MB,
+                    limit < UNLIMITED ? String.format(" (%.1f%% of the limit)", 100.0 * current / limit) : "");
+        }
+        if (peak >= 0) {
+            System.out.printf("Memory Peak         : %,.1f MB\n", peak / MB);
+        }
+        System.out.printf("JVM Max Heap        : %,.1f MB\n", runtime.maxMemory() / MB);
+
+        // Pressure: the group's own files on v2, the whole system's on v1
+        for (String resource : new String[]{"cpu", "memory", "io"}) {
+            Path file = version == 2 ? dirs.get("").resolve(resource + ".pressure")
+                    : Paths.get("/proc/pressure", resource);
+            try {
+                for (String line : Files.readAllLines(file)) {
+                    System.out.printf("%-20s: %s\n", "PSI " + resource + (version == 2 ? "" : " (system)"), line);
+                }
+            } catch (IOException e) {
+                // PSI is not enabled in this kernel
+            }
+        }
+
+        if (throttled > 0 && periods > 0) {
+            System.out.println("Note                : the quota throttled this group in "
+                    + Math.round(100.0 * throttled / periods) + "% of periods; use fewer threads than the quota allows");
+        }
+    }
+
+    /**
+     * Returns the directory of a group under a hierarchy's mount point. Inside a container the mount is
+     * often the group itself, so the mount point is used if the full path doesn't exist.
+     */
+    private static Path groupDir(Path mount, String group) {
+        Path dir = mount.resolve(group.startsWith("/") ? group.substring(1) : group);
+        return Files.isDirectory(dir) ? dir : mount;
+    }
+
+    /**
+     * Reads the first line of a file in a controller's group directory, or returns the default.
+     */
+    private String readLine(String controller, String file, String otherwise) {
+        Path dir = dirs.get(controller);
+        if (dir == null) {
+            return otherwise;
+        }
+        try {
+            List<String> lines = Files.readAllLines(dir.resolve(file));
+            return lines.isEmpty() ? otherwise : lines.get(0).trim();
+        } catch (IOException e) {
+            return otherwise;
+        }
+    }
+
+    /**
+     * Reads a file of "key value" lines such as cpu.stat.
+     */
+    private Map<String, Long> readStat(String controller, String file) {
+        Map<String, Long> stat = new HashMap<>();
+        Path dir = dirs.get(controller);
+        if (dir != null) {
+            try {
+                for (String line : Files.readAllLines(dir.resolve(file))) {
+                    String[] fields = line.trim().split("\\s+");
+                    if (fields.length == 2) {
+                        stat.put(fields[0], parseLong(fields[1], 0));
+                    }
+                }
+            } catch (IOException e) {
+                // No such controller
+            }
+        }
+        return stat;
+    }
+
+    private static long parseLong(String value, long otherwise) {
+        try {
+            return value == null ? otherwise : Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return otherwise;
+        }
+    }
+}
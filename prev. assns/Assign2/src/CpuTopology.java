@@ -0,0 +1,363 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * A model of the machine's processors read from /proc/cpuinfo and /sys/devices/system: the sockets,
+ * physical cores and logical CPUs, the NUMA nodes, and the caches with the CPUs sharing each one. On
+ * systems without these files only the number of processors available to the JVM is known.
+ *
+ * @author Ky Kartchner
+ */
+class CpuTopology {
+    private static final Path CPU_DIR = Paths.get("/sys/devices/system/cpu");
+    private static final Path NODE_DIR = Paths.get("/sys/devices/system/node");
+    private static final Path CPUINFO = Paths.get("/proc/cpuinfo");
+
+    /**
+     * One level of cache, as seen from a single CPU
+     */
+    static class Cache {
+        final int level;
+        final String type;     // Data, Instruction or Unified
+        final long sizeBytes;
+        final int lineBytes;
+        final int sharedBy;    // Number of logical CPUs sharing one instance
+        final int instances;   // Number of instances in the machine
+
+        Cache(int level, String type, long sizeBytes, int lineBytes, int sharedBy, int instances) {
+            this.level = level;
+            this.type = type;
+            this.sizeBytes = sizeBytes;
+            this.lineBytes = lineBytes;
+            this.sharedBy = sharedBy;
+            this.instances = instances;
+        }
+
+        /**
+         * Returns the conventional name of the cache, e.g. "L1d" or "L2".
+         */
+        String name() {
+            switch (type) {
+                case "Data":
+                    return "L" + level + "d";
+                case "Instruction":
+                    return "L" + level + "i";
+                default:
+                    return "L" + level;
+            }
+        }
+    }
+
+    final String model;
+    final int available;     // Processors the JVM may use (affinity and container limits applied)
+    final int logical;
+    final int physical;
+    final int sockets;
+    final TreeMap<Integer, List<Integer>> nodes = new TreeMap<>(); // NUMA node -> its CPUs
+    final List<Cache> caches = new ArrayList<>();
+    final boolean detailed;  // False if only the available processors are known
+
+    private CpuTopology() {
+        available = Runtime.getRuntime().availableProcessors();
+
+        String modelName = cpuinfoValue("model name");
+        List<Integer> cpus = Files.isDirectory(CPU_DIR) ? parseList(readLine(CPU_DIR.resolve("online"))) : List.of();
+        detailed = !cpus.isEmpty();
+
+        if (!detailed) {
+            model = modelName != null ? modelName : System.getProperty("os.arch");
+            logical = available;
+            physical = available;
+            sockets = 1;
+            return;
+        }
+
+        Set<String> cores = new HashSet<>();
+        Set<String> packages = new HashSet<>();
+        for (int cpu : cpus) {
+            Path topology = CPU_DIR.resolve("cpu" + cpu).resolve("topology");
+            String pkg = readLine(topology.resolve("physical_package_id"));
+            packages.add(pkg);
+            cores.add(pkg + ":" + readLine(topology.resolve("core_id")));
+        }
+
+        model = modelName != null ? modelName : System.getProperty("os.arch");
+        logical = cpus.size();
+        physical = cores.size();
+        sockets = packages.size();
+
+        readNodes(cpus);
+        readCaches(cpus);
+    }
+
+    /**
+     * Reads the topology of this machine.
+     */
+    static CpuTopology read() {
+        return new CpuTopology();
+    }
+
+    /**
+     * Returns the cache with the specified name (e.g. "L2"), or null if there isn't one.
+     */
+    Cache cache(String name) {
+        for (Cache cache : caches) {
+            if (cache.name().equals(name)) {
+                return cache;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the number of threads to use for CPU-bound work: one per physical core, as hyperthreads
+     * share a core's execution units, but no more than the JVM is allowed to use.
+     */
+    int computeThreads() {
+        return Math.max(1, Math.min(physical, available));
+    }
+
+    /**
+     * Returns the size in bytes for blocks of data that one thread works on at a time, chosen so a
+     * block and its neighbours stay in the thread's share of the core's private L2 (the L3 is left out
+     * because it is normally shared by all the cores, even where a VM reports it as private).
+     */
+    long tileBytes() {
+        int threadsPerCore = Math.max(1, logical / Math.max(1, physical));
+        long best = 0;
+        for (Cache cache : caches) {
+            if (cache.level <= 2 && !cache.type.equals("Instruction") && cache.sharedBy <= threadsPerCore) {
+                best = Math.max(best, cache.sizeBytes / threadsPerCore);
+            }
+        }
+        return best > 0 ? best / 2 : 128 * 1024; // Guess half of a typical L2 if nothing is known
+    }
+
+    /**
+     * Returns the cache line size in bytes, or 64 if it isn't known.
+     */
+    int lineBytes() {
+        for (Cache cache : caches) {
+            if (cache.lineBytes > 0) {
+                return cache.lineBytes;
+            }
+        }
+        return 64;
+    }
+
+    /**
+     * Prints the topology.
+     */
+    void print() {
+        System.out.println("Processors   : " + available);
+        System.out.println("Model        : " + model);
+        if (!detailed) {
+            System.out.println("(no topology information on this system)");
+            return;
+        }
+
+        System.out.println("Sockets      : " + sockets);
+        System.out.println("Cores        : " + physical + " physical, " + logical + " logical ("
+                + Math.max(1, logical / Math.max(1, physical)) + " per core)");
+        System.out.print("NUMA Nodes   : " + Math.max(1, nodes.size()));
+        for (var node : nodes.entrySet()) {
+            System.out.print("  node" + node.getKey() + " = " + formatList(node.getValue()));
+        }
+        System.out.println();
+        for (Cache cache : caches) {
+            System.out.printf("%-4s Cache   : %s x %d (%d B lines, shared by %d CPU%s)\n", cache.name(),
+                    formatSize(cache.sizeBytes), cache.instances, cache.lineBytes, cache.sharedBy,
+                    cache.sharedBy == 1 ? "" : "s");
+        }
+    }
+
+    /**
+     * Writes the topology and the suggested sizes as a properties file that other tools can load.
+     *
+     * @param file The file to write
+     * @throws IOException If the file can't be written
+     */
+    void writeProfile(Path file) throws IOException {
+        Properties profile = new Properties();
+        profile.setProperty("cpu.model", model);
+        profile.setProperty("cpu.available", Integer.toString(available));
+        profile.setProperty("cpu.logical", Integer.toString(logical));
+        profile.setProperty("cpu.physical", Integer.toString(physical));
+        profile.setProperty("cpu.sockets", Integer.toString(sockets));
+        profile.setProperty("numa.nodes", Integer.toString(Math.max(1, nodes.size())));
+        for (var node : nodes.entrySet()) {
+            profile.setProperty("numa.node" + node.getKey() + ".cpus", formatList(node.getValue()));
+        }
+        for (Cache cache : caches) {
+            String key = "cache." + cache.name();
+            profile.setProperty(key + ".size", Long.toString(cache.sizeBytes));
+            profile.setProperty(key + ".shared", Integer.toString(cache.sharedBy));
+            profile.setProperty(key + ".instances", Integer.toString(cache.instances));
+        }
+        profile.setProperty("cache.line", Integer.toString(lineBytes()));
+        profile.setProperty("suggested.threads", Integer.toString(computeThreads()));
+        profile.setProperty("suggested.tile.bytes", Long.toString(tileBytes()));
+
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            profile.store(writer, "CPU profile from Assign2 -cpu");
+        }
+    }
+
+    /**
+     * Reads the CPUs of each NUMA node.
+     */
+    private void readNodes(List<Integer> cpus) {
+        if (!Files.isDirectory(NODE_DIR)) {
+            nodes.put(0, cpus);
+            return;
+        }
+
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(NODE_DIR, "node[0-9]*")) {
+            for (Path dir : dirs) {
+                int node = Integer.parseInt(dir.getFileName().toString().substring(4));
+                nodes.put(node, parseList(readLine(dir.resolve("cpulist"))));
+            }
+        } catch (IOException | NumberFormatException e) {
+            nodes.clear();
+            nodes.put(0, cpus);
+        }
+    }
+
+    /**
+     * Reads the caches of the first CPU, and counts the instances of each by the distinct sets of CPUs
+     * sharing it.
+     */
+    private void readCaches(List<Integer> cpus) {
+        Path first = CPU_DIR.resolve("cpu" + cpus.get(0)).resolve("cache");
+        for (int index = 0; Files.isDirectory(first.resolve("index" + index)); ++index) {
+            Path dir = first.resolve("index" + index);
+            String size = readLine(dir.resolve("size"));
+            if (size == null) {
+                continue;
+            }
+
+            Set<String> instances = new HashSet<>();
+            for (int cpu : cpus) {
+                String shared = readLine(CPU_DIR.resolve("cpu" + cpu).resolve("cache").resolve("index" + index)
+                        .resolve("shared_cpu_list"));
+                if (shared != null) {
+                    instances.add(shared);
+                }
+            }
+
+            caches.add(new Cache(parseInt(readLine(dir.resolve("level"))), String.valueOf(readLine(dir.resolve("type"))),
+                    parseSize(size), parseInt(readLine(dir.resolve("coherency_line_size"))),
+                    Math.max(1, parseList(readLine(dir.resolve("shared_cpu_list"))).size()),
+                    Math.max(1, instances.size())));
+        }
+    }
+
+    /**
+     * Returns the value of the first line in /proc/cpuinfo with the specified key, or null.
+     */
+    private static String cpuinfoValue(String key) {
+        try {
+            for (String line : Files.readAllLines(CPUINFO)) {
+                int colon = line.indexOf(':');
+                if (colon > 0 && line.substring(0, colon).trim().equals(key)) {
+                    return line.substring(colon + 1).trim();
+                }
+            }
+        } catch (IOException e) {
+            // Not Linux
+        }
+        return null;
+    }
+
+    /**
+     * Reads the first line of a sysfs file, or returns null if it can't be read.
+     */
+    private static String readLine(Path file) {
+        try {
+            List<String> lines = Files.readAllLines(file);
+            return lines.isEmpty() ? null : lines.get(0).trim();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Parses a CPU list such as "0-3,8-11" into the CPU numbers.
+     */
+    static List<Integer> parseList(String list) {
+        List<Integer> cpus = new ArrayList<>();
+        if (list == null || list.isEmpty()) {
+            return cpus;
+        }
+
+        for (String range : list.split(",")) {
+            String[] ends = range.split("-");
+            int from = Integer.parseInt(ends[0].trim());
+            int to = ends.length > 1 ? Integer.parseInt(ends[1].trim()) : from;
+            for (int cpu = from; cpu <= to; ++cpu) {
+                cpus.add(cpu);
+            }
+        }
+        return cpus;
+    }
+
+    /**
+     * Formats CPU numbers back into the compact list form, e.g. "0-3,8".
+     */
+    private static String formatList(List<Integer> cpus) {
+        StringBuilder list = new StringBuilder();
+        for (int i = 0; i < cpus.size(); ) {
+            int j = i;
+            while (j + 1 < cpus.size() && cpus.get(j + 1) == cpus.get(j) + 1) {
+                ++j;
+            }
+            list.append(list.length() > 0 ? "," : "").append(cpus.get(i));
+            if (j > i) {
+                list.append('-').append(cpus.get(j));
+            }
+            i = j + 1;
+        }
+        return list.toString();
+    }
+
+    /**
+     * Parses a sysfs size such as "48K" or "32M" into bytes.
+     */
+    private static long parseSize(String size) {
+        long unit = 1;
+        char last = size.charAt(size.length() - 1);
+        if (last == 'K') {
+            unit = 1024;
+        } else if (last == 'M') {
+            unit = 1024 * 1024;
+        } else if (last == 'G') {
+            unit = 1024 * 1024 * 1024;
+        }
+        return parseInt(unit == 1 ? size : size.substring(0, size.length() - 1)) * unit;
+    }
+
+    private static int parseInt(String value) {
+        try {
+            return value == null ? 0 : Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static String formatSize(long bytes) {
+        if (bytes >= 1024 * 1024 && bytes % (1024 * 1024) == 0) {
+            return bytes / (1024 * 1024) + " MB";
+        }
+        return bytes / 1024 + " KB";
+    }
+}
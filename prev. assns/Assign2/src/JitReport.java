@@ -0,0 +1,154 @@
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryUsage;
+import java.lang.management.RuntimeMXBean;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Reports where a short run of the JVM spends its time before the program's own code runs at full speed:
+ * starting up, loading classes, and compiling with the JIT, along with how full the code cache is. An
+ * optional warm-up workload shows how the time per round falls, and the compile time levels off, as the
+ * JIT compiles the hot code.
+ *
+ * @author Ky Kartchner
+ */
+class JitReport {
+    private static final double MB = 1024.0 * 1024.0;
+
+    /**
+     * Number of elements the warm-up workload sorts and hashes each round
+     */
+    private static final int WORKLOAD_SIZE = 200_000;
+
+    /**
+     * A round within this fraction of the fastest round counts as warmed up (rounds vary by about this
+     * much from GCs and the OS even once everything is compiled)
+     */
+    private static final double SETTLED = 0.25;
+
+    private final RuntimeMXBean runtime = ManagementFactory.getRuntimeMXBean();
+    private final CompilationMXBean compiler = ManagementFactory.getCompilationMXBean();
+    private final ClassLoadingMXBean classes = ManagementFactory.getClassLoadingMXBean();
+
+    private long checksum = 0; // Keeps the JIT from removing the workload as dead code
+
+    /**
+     * Prints the startup timings: how long the process took to reach main (from when the OS started it
+     * when that is known, and from when the JVM started timing its uptime), and how long main took to
+     * produce its first output.
+     *
+     * @param mainNanos        System.nanoTime() when main was entered
+     * @param firstOutputNanos System.nanoTime() just after main's first output
+     */
+    void printStartup(long mainNanos, long firstOutputNanos) {
+        long now = System.nanoTime();
+        double uptimeAtMain = runtime.getUptime() - (now - mainNanos) / 1e6;
+
+        Instant started = ProcessHandle.current().info().startInstant().orElse(null);
+        if (started != null) {
+            // The start time only has the resolution of the OS's clock ticks
+            double sinceStart = Duration.between(started, Instant.now()).toNanos() / 1e6 - (now - mainNanos) / 1e6;
+            System.out.printf("Process start to main : %10.1f ms\n", sinceStart);
+        }
+        System.out.printf("JVM uptime at main    : %10.1f ms\n", uptimeAtMain);
+        System.out.printf("Main to first output  : %10.3f ms\n", (firstOutputNanos - mainNanos) / 1e6);
+        System.out.printf("Uptime now            : %10d ms\n", runtime.getUptime());
+    }
+
+    /**
+     * Prints the JIT compiler's name and total compile time, the class loading counts, and the use of
+     * each code cache pool.
+     */
+    void printCompilation() {
+        if (compiler == null) {
+            System.out.println("JIT Compiler          : none (interpreter only)");
+        } else {
+            System.out.println("JIT Compiler          : " + compiler.getName());
+            if (compiler.isCompilationTimeMonitoringSupported()) {
+                System.out.printf("Compile time          : %10d ms (%.1f%% of uptime)\n",
+                        compiler.getTotalCompilationTime(),
+                        100.0 * compiler.getTotalCompilationTime() / Math.max(1, runtime.getUptime()));
+            }
+        }
+
+        System.out.printf("Classes loaded        : %10d (%d in total, %d unloaded)\n", classes.getLoadedClassCount(),
+                classes.getTotalLoadedClassCount(), classes.getUnloadedClassCount());
+
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getName().startsWith("CodeHeap") || pool.getName().equals("Code Cache")) {
+                MemoryUsage usage = pool.getUsage();
+                System.out.printf("%-32s : %6.2f MB used, %6.2f MB peak, %6.2f MB max\n", pool.getName(),
+                        usage.getUsed() / MB, pool.getPeakUsage().getUsed() / MB, usage.getMax() / MB);
+            }
+        }
+    }
+
+    /**
+     * Runs the warm-up workload for the specified number of rounds, printing for each round its time,
+     * its throughput, and the compile time and classes loaded during it; then reports the round from
+     * which the time stayed within 25% of the fastest round's, through the last round (if the last round
+     * itself is slower than that, the workload hasn't settled).
+     *
+     * @param rounds The number of rounds to run (rounds >= 1)
+     */
+    void warmUp(int rounds) {
+        System.out.printf("%6s %10s %14s %12s %8s\n", "Round", "Time (ms)", "Elements/s", "Compile (ms)", "Classes");
+
+        double[] millis = new double[rounds];
+        Random random = new Random(42);
+        for (int round = 0; round < rounds; ++round) {
+            long compileBefore = compileMillis();
+            long classesBefore = classes.getTotalLoadedClassCount();
+
+            long start = System.nanoTime();
+            workload(random);
+            millis[round] = (System.nanoTime() - start) / 1e6;
+
+            System.out.printf("%6d %10.2f %14.0f %12d %8d\n", round + 1, millis[round],
+                    WORKLOAD_SIZE / (millis[round] / 1000), compileMillis() - compileBefore,
+                    classes.getTotalLoadedClassCount() - classesBefore);
+        }
+
+        double fastest = Arrays.stream(millis).min().getAsDouble();
+        int settled = rounds; // The first of the rounds at the end within SETTLED of the fastest
+        while (settled > 0 && millis[settled - 1] <= fastest * (1 + SETTLED)) {
+            --settled;
+        }
+        if (settled == rounds) {
+            System.out.printf("Not warmed up: the last round took %.2f ms, more than %.0f%% over the fastest's"
+                    + " %.2f ms (checksum %d)\n", millis[rounds - 1], SETTLED * 100, fastest, checksum);
+        } else {
+            System.out.printf("Warmed up from round %d: %.2f ms per round at best, %.1fx faster than the first"
+                    + " (checksum %d)\n", settled + 1, fastest, millis[0] / fastest, checksum);
+        }
+    }
+
+    /**
+     * One round of the warm-up: sorts random numbers and counts them in a hash map of strings, which
+     * exercises the interpreter and both compilers with loops, calls, allocation, and boxing.
+     */
+    private void workload(Random random) {
+        long[] values = new long[WORKLOAD_SIZE];
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = random.nextInt(WORKLOAD_SIZE);
+        }
+        Arrays.sort(values);
+
+        HashMap<String, Integer> counts = new HashMap<>();
+        for (long value : values) {
+            counts.merge(Long.toString(value % 1024), 1, Integer::sum);
+        }
+        checksum += values[values.length / 2] + counts.size();
+    }
+
+    private long compileMillis() {
+        return compiler != null && compiler.isCompilationTimeMonitoringSupported()
+                ? compiler.getTotalCompilationTime() : 0;
+    }
+}
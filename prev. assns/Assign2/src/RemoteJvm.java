@@ -0,0 +1,210 @@
+import com.sun.tools.attach.AttachNotSupportedException;
+import com.sun.tools.attach.VirtualMachine;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryUsage;
+import java.lang.management.RuntimeMXBean;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import javax.management.JMException;
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
+
+/**
+ * Another JVM on this machine, inspected through its platform MXBeans. The Attach API starts the JVM's
+ * local management agent (which needs no restart or command line flags) and a JMX connection is made to
+ * it, so the same memory, runtime, processor, garbage collection, and thread figures this JVM reports
+ * about itself can be read from the other one, along with a class histogram of its heap.
+ *
+ * @author Ky Kartchner
+ */
+class RemoteJvm implements Closeable {
+    private static final double MB = 1024.0 * 1024.0;
+
+    /**
+     * Number of classes the heap histogram lists
+     */
+    private static final int HISTOGRAM_CLASSES = 20;
+
+    /**
+     * Number of threads listed by CPU time
+     */
+    private static final int TOP_THREADS = 10;
+
+    private final String pid;
+    private final JMXConnector connector;
+    private final MBeanServerConnection connection;
+
+    private RemoteJvm(String pid, JMXConnector connector) throws IOException {
+        this.pid = pid;
+        this.connector = connector;
+        this.connection = connector.getMBeanServerConnection();
+    }
+
+    /**
+     * Attaches to the JVM with the specified process id and connects to its management agent.
+     *
+     * @param pid The process id of the JVM
+     * @return The connected JVM
+     * @throws IOException If the process isn't a JVM this user can attach to, or the connection fails
+     */
+    static RemoteJvm attach(String pid) throws IOException {
+        String address;
+        try {
+            VirtualMachine vm = VirtualMachine.attach(pid);
+            try {
+                address = vm.startLocalManagementAgent();
+            } finally {
+                vm.detach();
+            }
+        } catch (AttachNotSupportedException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+
+        return new RemoteJvm(pid, JMXConnectorFactory.connect(new JMXServiceURL(address)));
+    }
+
+    /**
+     * Returns the connection to the JVM's MBean server.
+     */
+    MBeanServerConnection connection() {
+        return connection;
+    }
+
+    /**
+     * Prints the JVM's heap figures in the same form as -mem: the free memory is the part of the
+     * committed heap that isn't used, and the total memory is the committed heap.
+     */
+    void printMemory() throws IOException {
+        MemoryUsage heap = ManagementFactory.getPlatformMXBean(connection, MemoryMXBean.class).getHeapMemoryUsage();
+        System.out.println("Free Memory  :\t" + String.format("%,12d", heap.getCommitted() - heap.getUsed()));
+        System.out.println("Total Memory :\t" + String.format("%,12d", heap.getCommitted()));
+        System.out.println("Max Memory   :\t" + String.format("%,12d", heap.getMax()));
+
+        for (MemoryPoolMXBean pool : ManagementFactory.getPlatformMXBeans(connection, MemoryPoolMXBean.class)) {
+            MemoryUsage usage = pool.getUsage();
+            System.out.printf("  %-32s %10.1f MB used of %10.1f MB\n", pool.getName(), usage.getUsed() / MB,
+                    usage.getCommitted() / MB);
+        }
+    }
+
+    /**
+     * Prints the JVM's vendor, runtime, and versions in the same form as -java.
+     */
+    void printJava() throws IOException {
+        RuntimeMXBean runtime = ManagementFactory.getPlatformMXBean(connection, RuntimeMXBean.class);
+        Map<String, String> properties = runtime.getSystemProperties();
+        System.out.println("Process             : " + pid + " (" + runtime.getName() + ")");
+        System.out.println("Java Vendor         : " + properties.get("java.vendor"));
+        System.out.println("Java Runtime        : " + properties.get("java.runtime.name"));
+        System.out.println("Java Version        : " + properties.get("java.version"));
+        System.out.println("Java VM Version     : " + properties.get("java.vm.version"));
+        System.out.println("Java VM Name        : " + properties.get("java.vm.name"));
+        System.out.println("Uptime              : " + runtime.getUptime() / 1000.0 + " s");
+    }
+
+    /**
+     * Prints the processors available to the JVM and its CPU use.
+     */
+    void printCpu() throws IOException {
+        com.sun.management.OperatingSystemMXBean os = ManagementFactory.getPlatformMXBean(connection,
+                com.sun.management.OperatingSystemMXBean.class);
+        System.out.println("Processors   : " + os.getAvailableProcessors());
+        System.out.printf("Process CPU  : %.3f s (%.1f%% load)\n", os.getProcessCpuTime() / 1e9,
+                Math.max(0, os.getProcessCpuLoad()) * 100);
+        System.out.printf("System Load  : %.2f\n", os.getSystemLoadAverage());
+    }
+
+    /**
+     * Prints the collections made by each garbage collector and the time they took.
+     */
+    void printGarbageCollectors() throws IOException {
+        RuntimeMXBean runtime = ManagementFactory.getPlatformMXBean(connection, RuntimeMXBean.class);
+        long totalMillis = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getPlatformMXBeans(connection,
+                GarbageCollectorMXBean.class)) {
+            System.out.printf("GC %-20s : %8d collections, %8d ms\n", collector.getName(),
+                    collector.getCollectionCount(), collector.getCollectionTime());
+            totalMillis += Math.max(0, collector.getCollectionTime());
+        }
+        System.out.printf("GC %-20s : %.2f%% of uptime\n", "overhead",
+                100.0 * totalMillis / Math.max(1, runtime.getUptime()));
+    }
+
+    /**
+     * Prints the threads that have used the most CPU time.
+     */
+    void printThreads() throws IOException {
+        ThreadMXBean threads = ManagementFactory.getPlatformMXBean(connection, ThreadMXBean.class);
+        System.out.println("Threads      : " + threads.getThreadCount() + " live, " + threads.getPeakThreadCount()
+                + " peak, " + threads.getDaemonThreadCount() + " daemon");
+        if (!threads.isThreadCpuTimeSupported()) {
+            return;
+        }
+
+        long[] ids = threads.getAllThreadIds();
+        long[] cpuTimes = new long[ids.length];
+        for (int i = 0; i < ids.length; ++i) {
+            cpuTimes[i] = threads.getThreadCpuTime(ids[i]); // -1 if the thread has ended or it is disabled
+        }
+        ThreadInfo[] infos = threads.getThreadInfo(ids);
+
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < ids.length; ++i) {
+            if (infos[i] != null && cpuTimes[i] >= 0) {
+                order.add(i);
+            }
+        }
+        order.sort((a, b) -> Long.compare(cpuTimes[b], cpuTimes[a]));
+
+        System.out.printf("  %10s  %-13s  %s\n", "CPU (ms)", "State", "Thread");
+        for (int i : order.subList(0, Math.min(TOP_THREADS, order.size()))) {
+            System.out.printf("  %10.1f  %-13s  %s\n", cpuTimes[i] / 1e6, infos[i].getThreadState(),
+                    infos[i].getThreadName());
+        }
+    }
+
+    /**
+     * Prints the classes with the most instances on the heap, using the same diagnostic command as
+     * "jcmd GC.class_histogram". This makes the JVM run a full collection first.
+     */
+    void printHistogram() throws IOException {
+        String histogram;
+        try {
+            histogram = (String) connection.invoke(new ObjectName("com.sun.management:type=DiagnosticCommand"),
+                    "gcClassHistogram", new Object[]{new String[0]}, new String[]{String[].class.getName()});
+        } catch (JMException e) {
+            System.out.println("Heap histogram not available: " + e);
+            return;
+        }
+
+        // A two line header, one line per class, and a total line
+        String[] lines = histogram.split("\n");
+        for (int i = 0; i < lines.length && i < HISTOGRAM_CLASSES + 2; ++i) {
+            System.out.println(lines[i]);
+        }
+        if (lines.length > HISTOGRAM_CLASSES + 3) {
+            System.out.println("   ...");
+            System.out.println(lines[lines.length - 1]);
+        }
+    }
+
+    /**
+     * Closes the connection; the JVM's management agent keeps running.
+     */
+    @Override
+    public void close() throws IOException {
+        connector.close();
+    }
+}
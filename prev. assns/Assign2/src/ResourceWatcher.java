@@ -0,0 +1,357 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import javax.management.MBeanServerConnection;
+
+/**
+ * Periodically samples the JVM's heap, memory pools, garbage collections, threads, and allocation rate
+ * through the platform MXBeans, of this JVM or of another one through a JMX connection. Besides how many
+ * collections ran and their total time, each sample has the longest pause among the collections that ran
+ * since the one before it, from the last collection of each collector (so if a collector ran several times
+ * in between, only its last pause is seen; for a concurrent collector, this is the whole collection, not
+ * only the pause). Samples are
+ * kept in a ring buffer of preallocated primitive arrays, so storing a sample creates no garbage and the
+ * buffer always holds the most recent samples. Every sample is printed as a line and can also be
+ * exported to a CSV or JSON lines file as it is taken.
+ *
+ * @author Ky Kartchner
+ */
+class ResourceWatcher {
+    private static final double MB = 1024.0 * 1024.0;
+
+    private final MemoryMXBean memory;
+    private final List<MemoryPoolMXBean> pools;
+    private final List<? extends GarbageCollectorMXBean> collectors;
+    private final long[] collectorCount;    // Each collector's collection count at the last sample
+    private final ThreadMXBean threads;
+
+    /**
+     * Measures allocation per thread; null if the JVM doesn't support it
+     */
+    private final com.sun.management.ThreadMXBean allocation;
+
+    /*
+     * The ring buffer; one array per measurement, indexed by sample
+     */
+    private final int capacity;
+    private final long[] timeMillis;
+    private final long[] heapUsed;
+    private final long[] heapCommitted;
+    private final long[] nonHeapUsed;
+    private final long[][] poolUsed; // [pool][sample]
+    private final long[] gcCount;
+    private final long[] gcTimeMillis;
+    private final long[] gcPauseMillis;
+    private final int[] threadCount;
+    private final long[] allocatedBytes;
+
+    private int next = 0;  // Slot for the next sample
+    private int count = 0; // Number of samples in the buffer
+    private long total = 0; // Number of samples taken overall
+    private long startMillis; // Time of the first sample
+
+    private BufferedWriter export = null;
+    private boolean exportJson = false;
+    private boolean finished = false;
+
+    /**
+     * Creates a watcher for this JVM whose ring buffer holds the specified number of samples.
+     *
+     * @param capacity The number of recent samples to keep
+     */
+    ResourceWatcher(int capacity) {
+        this(capacity, ManagementFactory.getMemoryMXBean(), ManagementFactory.getMemoryPoolMXBeans(),
+                ManagementFactory.getGarbageCollectorMXBeans(), ManagementFactory.getThreadMXBean(), false);
+    }
+
+    /**
+     * Creates a watcher for another JVM, reading its MXBeans through the specified connection.
+     *
+     * @param capacity   The number of recent samples to keep
+     * @param connection The connection to the other JVM's MBean server
+     * @throws IOException If the MXBeans can't be looked up
+     */
+    static ResourceWatcher forConnection(int capacity, MBeanServerConnection connection) throws IOException {
+        return new ResourceWatcher(capacity, ManagementFactory.getPlatformMXBean(connection, MemoryMXBean.class),
+                ManagementFactory.getPlatformMXBeans(connection, MemoryPoolMXBean.class),
+                ManagementFactory.getPlatformMXBeans(connection, com.sun.management.GarbageCollectorMXBean.class),
+                ManagementFactory.getPlatformMXBean(connection, com.sun.management.ThreadMXBean.class), true);
+    }
+
+    private ResourceWatcher(int capacity, MemoryMXBean memory, List<MemoryPoolMXBean> pools,
+                            List<? extends GarbageCollectorMXBean> collectors, ThreadMXBean threads,
+                            boolean remote) {
+        this.memory = memory;
+        this.pools = pools;
+        this.collectors = collectors;
+        collectorCount = new long[collectors.size()];
+        this.threads = threads;
+
+        com.sun.management.ThreadMXBean allocationBean = null;
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            allocationBean = (com.sun.management.ThreadMXBean) threads;
+            if (!allocationBean.isThreadAllocatedMemorySupported()) {
+                allocationBean = null;
+            } else if (remote) {    // Another JVM's settings are left alone; only use what it already measures
+                if (!allocationBean.isThreadAllocatedMemoryEnabled()) {
+                    allocationBean = null;
+                }
+            } else {
+                allocationBean.setThreadAllocatedMemoryEnabled(true);
+            }
+        }
+        allocation = allocationBean;
+
+        this.capacity = capacity;
+        timeMillis = new long[capacity];
+        heapUsed = new long[capacity];
+        heapCommitted = new long[capacity];
+        nonHeapUsed = new long[capacity];
+        poolUsed = new long[pools.size()][capacity];
+        gcCount = new long[capacity];
+        gcTimeMillis = new long[capacity];
+        gcPauseMillis = new long[capacity];
+        threadCount = new int[capacity];
+        allocatedBytes = new long[capacity];
+    }
+
+    /**
+     * Exports every sample taken from now on to the specified file: as JSON lines if its name ends in
+     * ".json" or ".jsonl", and as CSV otherwise.
+     *
+     * @param file The file to export to
+     * @throws IOException If the file can't be created
+     */
+    void exportTo(Path file) throws IOException {
+        String name = file.getFileName().toString();
+        exportJson = name.endsWith(".json") || name.endsWith(".jsonl");
+        export = Files.newBufferedWriter(file);
+
+        if (!exportJson) {
+            export.write("time_ms,heap_used,heap_committed,non_heap_used,gc_count,gc_time_ms,gc_pause_ms,threads,"
+                    + "allocated_bytes");
+            for (MemoryPoolMXBean pool : pools) {
+                export.write(",\"" + pool.getName() + "\"");
+            }
+            export.newLine();
+            export.flush();
+        }
+    }
+
+    /**
+     * Takes samples at the specified interval and prints each one, until the specified number of samples
+     * has been taken (or forever if the count is 0), then prints a summary of the buffered samples.
+     *
+     * @param intervalMillis The time between samples
+     * @param samples        The number of samples to take, or 0 to sample until the JVM is stopped
+     */
+    void watch(long intervalMillis, long samples) throws InterruptedException {
+        System.out.printf("%-12s %10s %10s %8s %10s %10s %8s %12s\n", "Time (ms)", "Heap (MB)", "Committed",
+                "GCs", "GC (ms)", "Pause (ms)", "Threads", "Alloc (MB/s)");
+
+        long nextTime = System.nanoTime();
+        while (samples == 0 || total < samples) {
+            synchronized (this) {
+                if (finished) {
+                    return;
+                }
+                sample();
+                printLatest();
+            }
+
+            nextTime += intervalMillis * 1_000_000L;
+            long sleep = nextTime - System.nanoTime();
+            if (sleep > 0) {
+                Thread.sleep(sleep / 1_000_000L, (int) (sleep % 1_000_000L));
+            }
+        }
+        finish();
+    }
+
+    /**
+     * Stops watching, printing the summary and closing the export file. Only the first call does anything,
+     * so it is safe to call from a shutdown hook as well.
+     */
+    synchronized void finish() {
+        if (finished) {
+            return;
+        }
+        finished = true;
+
+        printSummary();
+        if (export != null) {
+            try {
+                export.close();
+            } catch (IOException e) {
+                System.out.println("Export error: " + e);
+            }
+        }
+    }
+
+    /**
+     * Records the current values in the next slot of the ring buffer, overwriting the oldest sample once
+     * the buffer is full.
+     */
+    private void sample() {
+        int i = next;
+        timeMillis[i] = System.currentTimeMillis();
+        if (total == 0) {
+            startMillis = timeMillis[i];
+        }
+
+        MemoryUsage heap = memory.getHeapMemoryUsage();
+        heapUsed[i] = heap.getUsed();
+        heapCommitted[i] = heap.getCommitted();
+        nonHeapUsed[i] = memory.getNonHeapMemoryUsage().getUsed();
+
+        for (int p = 0; p < poolUsed.length; ++p) {
+            poolUsed[p][i] = pools.get(p).getUsage().getUsed();
+        }
+
+        long collections = 0;
+        long collectionTime = 0;
+        long longestPause = 0;
+        for (int c = 0; c < collectorCount.length; ++c) {
+            GarbageCollectorMXBean collector = collectors.get(c);
+            long collectorCollections = Math.max(0, collector.getCollectionCount()); // -1 means undefined
+            collections += collectorCollections;
+            collectionTime += Math.max(0, collector.getCollectionTime());
+            if (collectorCollections > collectorCount[c] && total > 0
+                    && collector instanceof com.sun.management.GarbageCollectorMXBean) {
+                com.sun.management.GcInfo last =
+                        ((com.sun.management.GarbageCollectorMXBean) collector).getLastGcInfo();
+                longestPause = Math.max(longestPause, last == null ? 0 : last.getDuration());
+            }
+            collectorCount[c] = collectorCollections;
+        }
+        gcCount[i] = collections;
+        gcTimeMillis[i] = collectionTime;
+        gcPauseMillis[i] = longestPause;
+
+        threadCount[i] = threads.getThreadCount();
+        allocatedBytes[i] = allocation == null ? 0 : totalAllocated();
+
+        next = (next + 1) % capacity;
+        count = Math.min(count + 1, capacity);
+        ++total;
+
+        if (export != null) {
+            exportSample(i);
+        }
+    }
+
+    /**
+     * Adds up the bytes allocated by all live threads.
+     */
+    private long totalAllocated() {
+        long sum = 0;
+        for (long bytes : allocation.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            sum += Math.max(0, bytes); // -1 for threads that have ended
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the buffer slot of the sample taken the specified number of samples ago (0 is the latest).
+     */
+    private int slot(int samplesAgo) {
+        return (next - 1 - samplesAgo + 2 * capacity) % capacity;
+    }
+
+    /**
+     * Prints the latest sample, with GC and allocation figures relative to the sample before it.
+     */
+    private void printLatest() {
+        int i = slot(0);
+        int previous = count > 1 ? slot(1) : i;
+
+        double seconds = (timeMillis[i] - timeMillis[previous]) / 1000.0;
+        double allocationRate = seconds > 0 ? (allocatedBytes[i] - allocatedBytes[previous]) / MB / seconds : 0;
+
+        System.out.printf("%-12d %10.1f %10.1f %8d %10d %10d %8d %12.1f\n", timeMillis[i] - startMillis,
+                heapUsed[i] / MB, heapCommitted[i] / MB, gcCount[i] - gcCount[previous],
+                gcTimeMillis[i] - gcTimeMillis[previous], gcPauseMillis[i], threadCount[i],
+                Math.max(0, allocationRate));
+    }
+
+    /**
+     * Writes a sample to the export file as a CSV row or a JSON object.
+     */
+    private void exportSample(int i) {
+        try {
+            if (exportJson) {
+                export.write("{\"time_ms\":" + timeMillis[i] + ",\"heap_used\":" + heapUsed[i]
+                        + ",\"heap_committed\":" + heapCommitted[i] + ",\"non_heap_used\":" + nonHeapUsed[i]
+                        + ",\"gc_count\":" + gcCount[i] + ",\"gc_time_ms\":" + gcTimeMillis[i]
+                        + ",\"gc_pause_ms\":" + gcPauseMillis[i]
+                        + ",\"threads\":" + threadCount[i] + ",\"allocated_bytes\":" + allocatedBytes[i]
+                        + ",\"pools\":{");
+                for (int p = 0; p < poolUsed.length; ++p) {
+                    export.write((p > 0 ? "," : "") + "\"" + pools.get(p).getName() + "\":" + poolUsed[p][i]);
+                }
+                export.write("}}");
+            } else {
+                export.write(timeMillis[i] + "," + heapUsed[i] + "," + heapCommitted[i] + "," + nonHeapUsed[i]
+                        + "," + gcCount[i] + "," + gcTimeMillis[i] + "," + gcPauseMillis[i] + "," + threadCount[i]
+                        + "," + allocatedBytes[i]);
+                for (long[] pool : poolUsed) {
+                    export.write("," + pool[i]);
+                }
+            }
+            export.newLine();
+            export.flush();
+        } catch (IOException e) {
+            System.out.println("Export error: " + e);
+            export = null;
+        }
+    }
+
+    /**
+     * Prints the trend over the samples in the buffer: the range and average of the heap use, the
+     * collections in that time and the longest pause seen, the peak thread count, and the average
+     * allocation rate.
+     */
+    private void printSummary() {
+        if (count == 0) {
+            return;
+        }
+
+        int first = slot(count - 1);
+        int last = slot(0);
+        long minHeap = Long.MAX_VALUE;
+        long maxHeap = 0;
+        double sumHeap = 0;
+        int maxThreads = 0;
+        long maxPause = 0;
+        for (int k = 0; k < count; ++k) {
+            int i = slot(k);
+            maxPause = Math.max(maxPause, gcPauseMillis[i]);
+            minHeap = Math.min(minHeap, heapUsed[i]);
+            maxHeap = Math.max(maxHeap, heapUsed[i]);
+            sumHeap += heapUsed[i];
+            maxThreads = Math.max(maxThreads, threadCount[i]);
+        }
+        double seconds = (timeMillis[last] - timeMillis[first]) / 1000.0;
+
+        System.out.println();
+        System.out.printf("Samples             : %d (summary of the last %d)\n", total, count);
+        System.out.printf("Heap used (MB)      : min %.1f, avg %.1f, max %.1f\n", minHeap / MB,
+                sumHeap / count / MB, maxHeap / MB);
+        System.out.printf("Garbage collections : %d taking %d ms\n", gcCount[last] - gcCount[first],
+                gcTimeMillis[last] - gcTimeMillis[first]);
+        System.out.printf("Longest GC pause    : %d ms\n", maxPause);
+        System.out.printf("Peak threads        : %d\n", maxThreads);
+        if (seconds > 0 && allocation != null) {
+            System.out.printf("Allocation rate     : %.1f MB/s\n",
+                    Math.max(0, allocatedBytes[last] - allocatedBytes[first]) / MB / seconds);
+        }
+    }
+}
@@ -1,53 +1,140 @@
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.PathMatcher;
 import java.nio.file.Paths;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 /**
  * Universal shell/command line interpreter for Windows, Linux, and macOS. Prompts with the current directory and
  * allows for the following commands and functionality:
- * "ptime"                       - Prints the total amount of time the shell has waited for child processes
- * "history"                     - Prints a list of commands that have been entered
+ * "ptime"                       - Prints the total time, CPU time and peak memory of the child processes, and a
+ * histogram of how long commands took
+ * "time [command]"              - Runs the command and prints its wall time, user and system CPU time, and peak memory
+ * "history [N]"                 - Prints a list of commands that have been entered (in this and earlier sessions), or
+ * the last N, with how long each took
+ * "history -s [text]"           - Prints the commands in the history that contain the text
  * "^ [N]"                       - Execute command number [N] from command history.
  * "list"                        - Print contents of the current directory in form similar to UNIX ls -l command
- * (i.e. "[permissions for user] [size in bytes] [date last modified] [name of file]"
+ * (i.e. "[permissions for user] [size in bytes] [date last modified] [name of file]"; with -s, -S or -t
+ * sorted by name, size or date, with -R also listing subdirectories, and with -P listing them in parallel)
+ * "find [path...] [-name pattern] [-type f|d]" - Print the files and directories under the paths (default: the
+ * current directory) whose names match the glob pattern and that are of the type, searching directories in parallel.
+ * "grep [-i] [-F] [-n] [-l] [pattern] [path...]" - Print the lines of the files (searching directories recursively,
+ * default: the current directory) that match the regular expression (with -F, that contain the text; with -i,
+ * ignoring case), with -n their line numbers, or with -l only the names of the files.
  * "cd [directory name]"         - Change to specified directory or change to home directory if "cd" by itself.
- * "[command 1] | [command 2]"   - Pipe the output of the first external command to the input of the second.
+ * "[command 1] | [command 2]"   - Pipe the output of the first external command to the input of the second
+ * (any number of commands can be chained, e.g. "a | b | c").
+ * "cat [file...]", "cp [source] [destination]", "head [-n N] [file]", "tail [-n N] [file]", "wc [-l] [-w] [-c] [file...]"
+ * - Run by the shell itself without starting a process (also as stages of a pipeline, e.g. "cat a | sort | head").
+ * "[command] < [file]"          - Read the command's input from the file; "> [file]" and ">> [file]" write (or
+ * append) its output to the file, "2> [file]" its errors, and "2>&1" sends its errors to its output.
+ * "[command] &"                 - Run the command (or pipeline) in the background as a numbered job.
+ * "jobs"                        - List the background jobs and whether they are still running.
+ * "fg [job]"                    - Wait for the job (default: the most recent one) in the foreground.
+ * "wait"                        - Wait for all background jobs to finish.
+ * "kill [-9] [job]"             - Stop the processes of a job (with -9, without letting them clean up).
+ * "hash [-r] [command...]"      - List the remembered locations of commands (with -r, forget them; with commands,
+ * look them up now).
+ * "parallel [-j N] [-k] [command] ::: [arg...]" - Run the command once for each argument (in place of "{}",
+ * or added to the end), N at a time (default: one per CPU), printing each one's output when it finishes (with
+ * -k, in the order of the arguments); with ":::: [file]" the arguments are the lines of the file, and without
+ * either they are the lines entered after the command, up to a blank line.
  * "exit"                        - Terminates the shell.
  *
  * @author Ky Kartchner
  */
 public class Assign3 {
     /**
-     * Stores the command history
+     * Stores the command history, shared with other sessions
      */
-    private static ArrayList<String> commandHistory = new ArrayList<>();
+    private static final CommandHistory commandHistory = CommandHistory.open();
 
     /**
-     * Stores the total time spent in (waiting for) child processes
+     * Stores how long each command in this session took, in nanoseconds
+     */
+    private static ArrayList<Long> commandLatency = new ArrayList<>();
+
+    /**
+     * Stores the total time spent in (waiting for) child processes, in nanoseconds
      */
     private static long totalChildProcessTime = 0;
 
+    /**
+     * Stores the highest peak memory of any command's child processes, in bytes
+     */
+    private static long maxChildPeakRss = -1;
+
+    /**
+     * The CPU time of the children when the shell started, so ptime can report just this session's
+     */
+    private static final long[] startChildCpu = ChildUsage.childrenCpuNanos();
+
+    /**
+     * The resource use of the last external command run in the foreground, for the time builtin
+     */
+    private static ChildUsage lastUsage = null;
+
+    /**
+     * The commands running in the background
+     */
+    private static final JobTable jobs = new JobTable(Assign3::addChildUsage);
+
+    /**
+     * Where the external commands that have been run were found on the PATH
+     */
+    private static final ExecutableCache executables = new ExecutableCache();
+
+    /**
+     * A word of a command: unquoted, in double quotes, or in single quotes
+     */
+    private static final Pattern WORD = Pattern.compile("[^\\s\"']+|\"([^\"]*)\"|'([^']*)'");
+
+    /**
+     * Size of the buffer of a pipe between two file commands
+     */
+    private static final int PIPE_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The shell's input, also read by builtins that take their arguments from it
+     */
+    private static final Scanner input = new Scanner(System.in);
+
     /**
      * Run shell prompt until exited.
      *
      * @param args (not used)
      */
     public static void main(String[] args) {
-        Scanner input = new Scanner(System.in);
         while (true) {
+            jobs.printNotices(); // Report the background jobs that finished since the last prompt
             System.out.printf("[%s]: ", System.getProperty("user.dir")); // Print "[current directory]: "
 
             String command = input.nextLine(); // Get user input
             if (!command.isEmpty()) {          // Only run non-blank input:
-                commandHistory.add(command);
+                long number = commandHistory.add(command);
+                long start = System.nanoTime();
                 runCommand(command);
+                long nanos = System.nanoTime() - start;
+                commandLatency.add(nanos);
+                commandHistory.setLatency(number, nanos);
             }
         }
     }
@@ -60,27 +147,35 @@ public class Assign3 {
     private static void runCommand(String command) {
         if (!command.isEmpty()) {  // Ensure at least command name (commandArgs[0]) is included.
             String[] commandArgs = splitCommand(command);
+            boolean[] quoted = quotedWords(command);    // Quoted words are never operators such as "|" or ">"
             switch (commandArgs[0]) {
                 /* Test if commandArgs[0] is a built in shell command: If so, perform that operation: */
                 case "ptime":
                     showProcessTime();
                     break;
+                case "time":
+                    if (commandArgs.length > 1) {
+                        timeCommand(Arrays.copyOfRange(commandArgs, 1, commandArgs.length),
+                                Arrays.copyOfRange(quoted, 1, quoted.length));
+                    } else {
+                        System.out.println("Command \"time\" must be followed by a command");
+                    }
+                    break;
                 case "history":
-                    listHistory();
+                    listHistory(commandArgs);
                     break;
                 case "^":
                     try {
                         // Set commandNum to commandArg[1] if it is a valid number, otherwise throw an exception:
-                        int commandNum = Integer.valueOf(commandArgs[1]);
+                        long commandNum = Long.parseLong(commandArgs[1]);
 
                         boolean numInBounds = (0 < commandNum && commandNum <= commandHistory.size());
                         if (numInBounds) {
-                            /* The command history is 1-based, so 1 is subtracted to convert to 0-based. If the
-                             command at commandNum-1 is '^ commandNum', this will cause an infinite loop, so don't
-                             try to execute. */
-                            boolean willLoop = commandHistory.get(commandNum - 1).equals("^ " + commandNum);
+                            /* If the command at commandNum is '^ commandNum', this will cause an infinite loop,
+                             so don't try to execute. */
+                            boolean willLoop = commandHistory.get(commandNum).equals("^ " + commandNum);
                             if (!willLoop) {
-                                runCommand(commandHistory.get(commandNum - 1));
+                                runCommand(commandHistory.get(commandNum));
                             } else {
                                 System.out.printf("Command \"%s\" would created an infinite loop." +
                                         " Command not executed\n", command);
@@ -97,18 +192,56 @@ public class Assign3 {
                     }
                     break;
                 case "list":
-                    listDirectory();
+                    listDirectory(commandArgs);
+                    break;
+                case "find":
+                    findFiles(commandArgs);
+                    break;
+                case "grep":
+                    grepFiles(commandArgs);
                     break;
                 case "cd":
                     String toPath = commandArgs.length > 1 ? commandArgs[1] : "~";
                     changeDirectory(toPath);
                     break;
+                case "jobs":
+                    jobs.list();
+                    break;
+                case "fg":
+                    JobTable.Job job = jobs.find(commandArgs.length > 1 ? commandArgs[1] : null);
+                    if (job != null) {
+                        jobs.foreground(job);
+                    }
+                    break;
+                case "wait":
+                    jobs.waitAll();
+                    break;
+                case "kill":
+                    boolean forcibly = commandArgs.length > 1 && commandArgs[1].equals("-9");
+                    int jobArg = forcibly ? 2 : 1;
+                    JobTable.Job toKill = jobs.find(commandArgs.length > jobArg ? commandArgs[jobArg] : null);
+                    if (toKill != null) {
+                        jobs.kill(toKill, forcibly);
+                    }
+                    break;
+                case "hash":
+                    if (commandArgs.length > 1 && commandArgs[1].equals("-r")) {
+                        executables.clear();
+                    } else if (commandArgs.length > 1) {
+                        executables.add(Arrays.copyOfRange(commandArgs, 1, commandArgs.length));
+                    } else {
+                        executables.list();
+                    }
+                    break;
+                case "parallel":
+                    runParallel(commandArgs);
+                    break;
                 case "exit":
                     System.exit(0);
                     break;
                 /* Else, attempt to execute it as an external program */
                 default:
-                    runAsExternal(commandArgs);
+                    runAsExternal(commandArgs, quoted);
                     break;
             }
 
@@ -116,55 +249,297 @@ public class Assign3 {
     }
 
     /**
-     * Display the number of seconds (4 digits past the decimal) spent executing (waiting for) child process.
+     * Display the number of seconds (4 digits past the decimal) spent executing (waiting for) child process,
+     * the CPU time they used, their peak memory, and a histogram of how long the commands took.
      * Command to execute: ptime
      */
     private static void showProcessTime() {
-        System.out.printf("Total time in child processes: %.4f\n", totalChildProcessTime / 1000.0);
+        System.out.printf("Total time in child processes: %.4f\n", getChildProcessTime() / 1e9);
+
+        long[] childCpu = ChildUsage.childrenCpuNanos();
+        if (childCpu != null && startChildCpu != null) {    // Includes background jobs that have finished
+            System.out.printf("User CPU time in child processes: %.4f\n", (childCpu[0] - startChildCpu[0]) / 1e9);
+            System.out.printf("System CPU time in child processes: %.4f\n", (childCpu[1] - startChildCpu[1]) / 1e9);
+        }
+        synchronized (Assign3.class) {
+            if (maxChildPeakRss >= 0) {
+                System.out.printf("Peak memory of a command: %.1f MB\n", maxChildPeakRss / (1024.0 * 1024.0));
+            }
+        }
+
+        printLatencyHistogram();
     }
 
     /**
-     * Show the command history
-     * Command to execute: "history"
+     * Prints how many commands took less than 1 ms, 1-2 ms, 2-4 ms, and so on, doubling each time.
      */
-    private static void listHistory() {
-        System.out.println("-- Command History --");
-        for (int i = 0; i < commandHistory.size(); ++i) {
-            System.out.println((i + 1) + " : " + commandHistory.get(i));
+    private static void printLatencyHistogram() {
+        int[] buckets = new int[64];
+        int lowest = buckets.length;
+        int highest = -1;
+        for (long nanos : commandLatency) {
+            // Bucket 0 is < 1 ms, bucket b >= 1 is [2^(b-1), 2^b) ms
+            int bucket = 64 - Long.numberOfLeadingZeros(nanos / 1_000_000);
+            ++buckets[bucket];
+            lowest = Math.min(lowest, bucket);
+            highest = Math.max(highest, bucket);
+        }
+
+        System.out.println("-- Command Latency --");
+        for (int b = lowest; b <= highest; ++b) {
+            String range = b == 0 ? "< 1 ms" : (1L << (b - 1)) + "-" + (1L << b) + " ms";
+            System.out.printf("%16s : %4d %s\n", range, buckets[b], "#".repeat(Math.min(buckets[b], 60)));
         }
     }
 
     /**
-     * List the contents of the current directory.
-     * Command to execute: "list"
+     * Adds the resources used by a command's child processes to the totals; called from the job table's
+     * threads as background jobs finish.
+     *
+     * @param usage The command's resource use.
      */
-    private static void listDirectory() {
-        File currentDir = new File(System.getProperty("user.dir"));
-        if (currentDir.listFiles() != null) {
-            for (File file : currentDir.listFiles()) {
-                printFileInfo(file);
+    private static synchronized void addChildUsage(ChildUsage usage) {
+        totalChildProcessTime += usage.wallNanos;
+        maxChildPeakRss = Math.max(maxChildPeakRss, usage.peakRssBytes);
+    }
+
+    private static synchronized long getChildProcessTime() {
+        return totalChildProcessTime;
+    }
+
+    /**
+     * Runs a command and prints the time and memory it took.
+     * Command to execute: "time [command]"
+     *
+     * @param command The command to run.
+     */
+    private static void timeCommand(String[] command, boolean[] quoted) {
+        lastUsage = null;
+        long start = System.nanoTime();
+        runAsExternal(command, quoted);
+
+        if (lastUsage != null) {
+            lastUsage.print();
+        } else {    // It failed to start, or is running in the background
+            System.out.printf("real    %s\n", ChildUsage.format(System.nanoTime() - start));
+        }
+    }
+
+    /**
+     * Show the command history, the last N commands of it, or the commands in it containing some text.
+     * Command to execute: "history [N]" or "history -s [text]"
+     *
+     * @param commandArgs The history command and its arguments.
+     */
+    private static void listHistory(String[] commandArgs) {
+        if (commandArgs.length > 1 && commandArgs[1].equals("-s")) {
+            if (commandArgs.length > 2) {
+                commandHistory.search(String.join(" ", Arrays.copyOfRange(commandArgs, 2, commandArgs.length)));
+            } else {
+                System.out.println("Option \"-s\" must be followed by the text to search for");
             }
+            return;
         }
+
+        long from = 1;
+        if (commandArgs.length > 1) {
+            try {
+                from = Math.max(commandHistory.size() - Long.parseLong(commandArgs[1]) + 1, 1);
+            } catch (NumberFormatException ex) {
+                System.out.printf("Error: \"%s\" is not a number\n", commandArgs[1]);
+                return;
+            }
+        }
+        commandHistory.print(from);
     }
 
     /**
-     * Helper function to print the information of the specified file into a format similar to the "ls -l" bash
-     * command.(i.e. "[permissions for current user] [size in bytes] [date last modified] [name of file]").
+     * List the contents of the current directory (or of the specified directory), optionally sorted, recursively,
+     * and in parallel.
+     * Command to execute: "list [-s | -S | -t] [-R] [-P] [directory name]"
+     * -s sorts by name, -S by size (largest first), -t by date last modified (newest first); -R also lists the
+     * subdirectories, and -P lists them in parallel.
      *
-     * @param file The file to print information about.
+     * @param commandArgs The list command and its options.
      */
-    private static void printFileInfo(File file) {
-        char d = file.isDirectory() ? 'd' : '-';
-        char r = file.canRead() ? 'r' : '-';
-        char w = file.canWrite() ? 'w' : '-';
-        char x = file.canExecute() ? 'x' : '-';
+    private static void listDirectory(String[] commandArgs) {
+        DirectoryLister.Order order = DirectoryLister.Order.DIRECTORY;
+        boolean recursive = false;
+        boolean parallel = false;
+        String directory = null;
+        for (int i = 1; i < commandArgs.length; ++i) {
+            switch (commandArgs[i]) {
+                case "-s":
+                    order = DirectoryLister.Order.NAME;
+                    break;
+                case "-S":
+                    order = DirectoryLister.Order.SIZE;
+                    break;
+                case "-t":
+                    order = DirectoryLister.Order.TIME;
+                    break;
+                case "-R":
+                    recursive = true;
+                    break;
+                case "-P":
+                    parallel = true;
+                    break;
+                default:
+                    directory = commandArgs[i];
+                    break;
+            }
+        }
+
+        Path currentDir = Paths.get(System.getProperty("user.dir"));
+        Path path = directory == null ? currentDir : currentDir.resolve(directory);
+        boolean unix = FileSystems.getDefault().supportedFileAttributeViews().contains("unix");
+        try {
+            new DirectoryLister(order, recursive, parallel, unix).list(path);
+        } catch (IOException e) {
+            System.out.printf("list failed: Directory \"%s\" can't be read (%s)\n", path, e);
+        }
+    }
 
-        Date lastModifiedDate = new Date(file.lastModified());
-        SimpleDateFormat dateFormat = new SimpleDateFormat("MMM d, yyyy HH:mm");
+    /**
+     * Print the files and directories under the specified paths whose names match a glob pattern and that are of
+     * the specified type. Directories are searched in parallel, and the results are printed as they are found.
+     * Command to execute: "find [path...] [-name pattern] [-type f|d]"
+     *
+     * @param commandArgs The find command, its paths and its options.
+     */
+    private static void findFiles(String[] commandArgs) {
+        PathMatcher nameMatcher = null;
+        String type = null;
+        List<String> paths = new ArrayList<>();
+        try {
+            for (int i = 1; i < commandArgs.length; ++i) {
+                switch (commandArgs[i]) {
+                    case "-name":
+                        nameMatcher = FileSystems.getDefault().getPathMatcher("glob:" + commandArgs[++i]);
+                        break;
+                    case "-type":
+                        type = commandArgs[++i];
+                        if (!type.equals("f") && !type.equals("d")) {
+                            System.out.println("Option \"-type\" must be followed by f or d");
+                            return;
+                        }
+                        break;
+                    default:
+                        paths.add(commandArgs[i]);
+                        break;
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException ex) {
+            System.out.printf("Option \"%s\" must be followed by a value\n", commandArgs[commandArgs.length - 1]);
+            return;
+        } catch (IllegalArgumentException ex) {
+            System.out.println("find failed: invalid pattern (" + ex.getMessage() + ")");
+            return;
+        }
 
-        System.out.printf("%c%c%c%c %10s %s %s", d, r, w, x, file.length(), dateFormat.format(lastModifiedDate),
-                file.getName());
-        System.out.println();
+        Path currentDir = Paths.get(System.getProperty("user.dir"));
+        PathMatcher matchName = nameMatcher;
+        String matchType = type;
+        new ParallelWalker("find", (path, attributes, out) -> {
+            if (matchName != null && (path.getFileName() == null || !matchName.matches(path.getFileName()))) {
+                return;
+            }
+            if (matchType != null && attributes.isDirectory() != matchType.equals("d")) {
+                return;
+            }
+            out.append(shownPath(currentDir, path)).append('\n');
+        }).walk(resolvePaths(currentDir, paths));
+    }
+
+    /**
+     * Print the lines of the specified files, and of the files under the specified directories, that match a
+     * pattern. Directories are searched in parallel, each file is searched through a memory mapping, and the
+     * results are printed as they are found.
+     * Command to execute: "grep [-i] [-F] [-n] [-l] [pattern] [path...]"
+     * -i ignores case, -F takes the pattern as text rather than a regular expression, -n prints line numbers,
+     * and -l prints only the names of the files with a matching line.
+     *
+     * @param commandArgs The grep command, its options, the pattern and the paths.
+     */
+    private static void grepFiles(String[] commandArgs) {
+        boolean ignoreCase = false;
+        boolean fixed = false;
+        boolean lineNumbers = false;
+        boolean filesOnly = false;
+        int i = 1;
+        for (; i < commandArgs.length && commandArgs[i].startsWith("-") && commandArgs[i].length() > 1; ++i) {
+            for (char option : commandArgs[i].substring(1).toCharArray()) {
+                switch (option) {
+                    case 'i':
+                        ignoreCase = true;
+                        break;
+                    case 'F':
+                        fixed = true;
+                        break;
+                    case 'n':
+                        lineNumbers = true;
+                        break;
+                    case 'l':
+                        filesOnly = true;
+                        break;
+                    default:
+                        System.out.printf("grep: unknown option \"-%c\"\n", option);
+                        return;
+                }
+            }
+        }
+        if (i == commandArgs.length) {
+            System.out.println("Command \"grep\" must be followed by a pattern");
+            return;
+        }
+        String pattern = commandArgs[i];
+
+        Path currentDir = Paths.get(System.getProperty("user.dir"));
+        List<Path> paths = resolvePaths(currentDir, Arrays.asList(commandArgs).subList(i + 1, commandArgs.length));
+        // File names are printed unless a single file is searched:
+        boolean fileNames = paths.size() > 1 || Files.isDirectory(paths.get(0));
+        Grep grep;
+        try {
+            grep = new Grep(pattern, fixed, ignoreCase, lineNumbers, filesOnly, fileNames);
+        } catch (PatternSyntaxException ex) {
+            System.out.println("grep failed: invalid pattern (" + ex.getDescription() + ")");
+            return;
+        }
+        new ParallelWalker("grep", (path, attributes, out) -> {
+            if (attributes.isRegularFile()) {
+                try {
+                    grep.search(path, shownPath(currentDir, path), out);
+                } catch (IOException e) {
+                    out.append("grep: ").append(shownPath(currentDir, path)).append(": ").append(e.toString())
+                            .append('\n');
+                }
+            }
+        }).walk(paths);
+    }
+
+    /**
+     * Helper function to resolve paths against the current directory, defaulting to the current directory.
+     */
+    private static List<Path> resolvePaths(Path currentDir, List<String> paths) {
+        List<Path> resolved = new ArrayList<>();
+        for (String path : paths) {
+            resolved.add(currentDir.resolve(path));
+        }
+        if (resolved.isEmpty()) {
+            resolved.add(currentDir);
+        }
+        return resolved;
+    }
+
+    /**
+     * Helper function to show a path relative to the current directory if it's under it (as "." if it is it).
+     */
+    private static String shownPath(Path currentDir, Path path) {
+        if (!path.startsWith(currentDir)) {
+            return path.toString();
+        }
+        String relative = currentDir.relativize(path).toString();
+        return relative.isEmpty() ? "." : relative;
     }
 
     /**
@@ -199,133 +574,493 @@ public class Assign3 {
     }
 
     /**
-     * Runs the specified command as a single external command (or as two piped commands if args contain "|").
+     * Runs the specified command as a single external command, or as a pipeline if args contain "|"
+     * (e.g. "a | b | c | d", with any number of stages). Each command can have file redirections, e.g.
+     * "a < in.txt | b 2> errors.txt | c >> out.txt".
      * Shell waits for child processes to finish before allowing for further commands unless ampersand(&) is present at
      * the end of the command.
      *
      * @param command The command to execute.
+     * @param quoted  Whether each word of the command was quoted (and so is an argument, not an operator).
      */
-    private static void runAsExternal(String[] command) {
-        boolean noWait = command[command.length - 1].equals("&"); // No waiting if last argument is ampersand
-        if (noWait) {       // Prevent wait ampersand (&) from being passed in as an argument if needed
-            command[command.length - 1] = "";
+    private static void runAsExternal(String[] command, boolean[] quoted) {
+        // No waiting if last argument is an (unquoted) ampersand:
+        boolean noWait = command[command.length - 1].equals("&") && !quoted[command.length - 1];
+        if (noWait) {       // Prevent wait ampersand (&) from being passed in as an argument
+            command = Arrays.copyOf(command, command.length - 1);
         }
 
-        int indexOfPipe = command.length;
-        for (int i = 0; i < command.length; ++i) {
-            if (command[i].equals("|")) {
-                indexOfPipe = i;
-                break;
+        // Split the command into the stages between the unquoted "|" symbols:
+        List<String[]> stages = new ArrayList<>();
+        List<boolean[]> stagesQuoted = new ArrayList<>();
+        int stageStart = 0;
+        for (int i = 0; i <= command.length; ++i) {
+            if (i == command.length || (command[i].equals("|") && !quoted[i])) {
+                if (i == stageStart) {  // Nothing before the end or between two "|"
+                    System.out.println("Invalid pipeline: missing command around \"|\"");
+                    return;
+                }
+                stages.add(Arrays.copyOfRange(command, stageStart, i));
+                stagesQuoted.add(Arrays.copyOfRange(quoted, stageStart, i));
+                stageStart = i + 1;
             }
         }
 
-        boolean piping = (indexOfPipe != command.length);
+        // Separate the redirections from each stage's arguments:
+        File currentDir = new File(System.getProperty("user.dir"));
+        List<Redirections> redirections = new ArrayList<>();
+        for (int i = 0; i < stages.size(); ++i) {
+            Redirections stageRedirections = Redirections.parse(stages.get(i), stagesQuoted.get(i), currentDir);
+            if (stageRedirections == null) {
+                return;
+            }
+            // Only the first stage's input and the last stage's output aren't connected to another stage:
+            if ((i > 0 && stageRedirections.input != null) || (i < stages.size() - 1 && stageRedirections.output != null)) {
+                System.out.println("Invalid pipeline: only the first command can read from a file and only the last"
+                        + " can write to one");
+                return;
+            }
+            redirections.add(stageRedirections);
+        }
+
+        boolean fileCommands = false;
+        for (Redirections stage : redirections) {
+            fileCommands |= FileCommands.isFileCommand(stage.command.get(0));
+        }
+        if (fileCommands) {         // The shell runs some of the commands itself
+            if (noWait) {
+                System.out.println("Invalid command: cat, cp, head, tail and wc can't run in the background");
+            } else {
+                runWithFileCommands(redirections);
+            }
+            return;
+        }
+
+        boolean piping = stages.size() > 1;
         if (piping) {
-            pipeExternal(command, indexOfPipe, noWait);
+            pipeExternal(stages, redirections, noWait);
         } else {
-            runExternal(command, noWait);
+            runExternal(command, redirections.get(0), noWait);
         }
     }
 
     /**
-     * Pipe two external commands together.
+     * Pipe any number of external commands together, each one's output going to the next one's input.
      *
-     * @param command     The full command being run.,
-     * @param indexOfPipe The index of the pipe symbol ("|") in the command array.
-     * @param noWait      If true the shell will not wait for child process to finish. Otherwise, it will.
+     * @param stages       The commands in the pipeline, in order.
+     * @param redirections The file redirections of each command, and the command without them.
+     * @param noWait       If true the shell will not wait for child process to finish. Otherwise, it will.
      */
-    private static void pipeExternal(String[] command, int indexOfPipe, boolean noWait) {
-        // Copy strings on left side of "|" in command array into command1 sub array:
-        String[] command1 = new String[indexOfPipe];
-        System.arraycopy(command, 0, command1, 0, command1.length);
+    private static void pipeExternal(List<String[]> stages, List<Redirections> redirections, boolean noWait) {
+        // Make the process builders inherit their starting directory from the current directory of the shell:
+        File currentDir = new File(System.getProperty("user.dir"));
 
-        // Copy strings on right side of "|" in command array into command2 sub array:
-        String[] command2 = new String[Math.abs(command.length - indexOfPipe - 1)];
-        System.arraycopy(command, indexOfPipe + 1, command2, 0, command2.length);
+        List<ProcessBuilder> processBuilders = new ArrayList<>();
+        for (Redirections stage : redirections) {
+            ProcessBuilder processBuilder = new ProcessBuilder(resolveExecutable(stage.command.toArray(new String[0])));
+            processBuilder.directory(currentDir);
+            // Every stage writes errors straight to the shell's error output, so a stage can never block on
+            // a full error pipe that nobody reads:
+            processBuilder.redirectError(ProcessBuilder.Redirect.INHERIT);
+            processBuilders.add(processBuilder);
+        }
 
-        // Create process builders:
-        ProcessBuilder processBuilder1 = new ProcessBuilder(command1);
-        ProcessBuilder processBuilder2 = new ProcessBuilder(command2);
+        // Redirect input of the first stage and output of the last stage to properly inherit from shell:
+        processBuilders.get(0).redirectInput(ProcessBuilder.Redirect.INHERIT);
+        processBuilders.get(processBuilders.size() - 1).redirectOutput(ProcessBuilder.Redirect.INHERIT);
+        for (int i = 0; i < processBuilders.size(); ++i) {  // Unless they, or a stage's errors, go to a file
+            redirections.get(i).apply(processBuilders.get(i));
+        }
 
-        // Redirect input and output to properly inherit from shell:
-        processBuilder1.redirectInput(ProcessBuilder.Redirect.INHERIT);
-        processBuilder2.redirectOutput(ProcessBuilder.Redirect.INHERIT);
+        try { // Try to run the processes
+            ChildUsage usage = ChildUsage.start();    // Start measuring the time and memory
+            // Start all of the processes at once, each one's output connected to the next one's input by an OS
+            // pipe, so the data goes straight from one to the next without passing through the shell:
+            List<Process> processes = ProcessBuilder.startPipeline(processBuilders);
 
-        // Make both process builders inherit their starting directory from the current directory of the shell:
-        File currentDir = new File(System.getProperty("user.dir"));
-        processBuilder1.directory(currentDir);
-        processBuilder2.directory(currentDir);
+            boolean[] stopped = new boolean[processes.size()];
+            List<CompletableFuture<Void>> stoppers = stopWritersOnExit(processes, stopped, 0);
 
-        try { // Try to run the processes
-            long start = System.currentTimeMillis(); // Save current time for start time
-            Process process1 = processBuilder1.start(); // Start both processes:
-            Process process2 = processBuilder2.start();
+            if (noWait) {                           // Track it as a job if noWait is true:
+                StringBuilder pipeline = new StringBuilder();
+                for (String[] stage : stages) {
+                    pipeline.append(pipeline.length() > 0 ? " | " : "").append(String.join(" ", stage));
+                }
+                jobs.add(pipeline.toString(), processes);
+                return;
+            }
+            usage.watch(processes);
+
+            // Otherwise wait, from the last stage back to the first:
+            int[] exitStatus = new int[processes.size()];
+            boolean failed = false;
+            for (int i = processes.size() - 1; i >= 0; --i) {
+                exitStatus[i] = processes.get(i).waitFor();
+                if (i < stoppers.size()) {          // The next stage has exited, so its callback is finishing
+                    stoppers.get(i).join();
+                }
+                failed |= exitStatus[i] != 0 && !stopped[i];
+            }
+            if (failed) {                           // Show which stages failed:
+                printExitStatus(redirections, exitStatus, stopped);
+            }
+
+            lastUsage = usage.finish();              // Stop measuring, and add to the totals
+            addChildUsage(lastUsage);
 
-            pipeProcesses(process1, process2);      // Pipe process1's output to process2's input
+        } catch (IOException e) {                   // If a stage can't be started, none are
+            System.out.println("Invalid pipeline: " + e.getMessage());
+        } catch (Exception e) {
+            System.out.println("Problem with piping: " + e);
 
+        }
+    }
 
-            if (!noWait) {                          // Wait if noWait is false:
-                process1.waitFor();
-                process2.waitFor();
+    /**
+     * Helper function to stop each process of a pipeline when the process reading its output exits. A copy of the
+     * read end of a pipe between the processes of ProcessBuilder.startPipeline can stay open in the JVM (or in
+     * another process started at the same time), so a process whose reader has exited doesn't always get the
+     * SIGPIPE that normally stops it, and would then block forever once the pipe is full. Either way the writer
+     * counts as stopped, not failed, as it is in bash.
+     *
+     * @param processes The processes, connected in order.
+     * @param stopped   Set to true for the stage of each process that is stopped.
+     * @param first     The stage of the first process in the pipeline.
+     * @return The callbacks; the i-th one may stop process i.
+     */
+    private static List<CompletableFuture<Void>> stopWritersOnExit(List<Process> processes, boolean[] stopped,
+                                                                   int first) {
+        List<CompletableFuture<Void>> stoppers = new ArrayList<>();
+        for (int i = 1; i < processes.size(); ++i) {
+            Process writer = processes.get(i - 1);
+            int writerStage = first + i - 1;
+            stoppers.add(processes.get(i).onExit().thenRun(() -> {
+                if (stoppedByReader(writer)) {
+                    stopped[writerStage] = true;
+                    writer.destroy();
+                }
+            }));
+        }
+        return stoppers;
+    }
+
+    /**
+     * Returns whether a process, whose reader has just exited, was stopped by that: it is still running (and
+     * is about to be destroyed), or it was killed by the SIGPIPE of writing to the closed pipe.
+     *
+     * @param writer The process that wrote to the reader.
+     * @return Whether its exit status isn't a failure of its own.
+     */
+    private static boolean stoppedByReader(Process writer) {
+        return writer.isAlive() || writer.exitValue() == FileCommands.SIGPIPE_STATUS;
+    }
+
+    /**
+     * Runs a command, or a pipeline, in which the shell runs some of the commands (cat, cp, head, tail and wc)
+     * itself. Each consecutive run of external commands is started as a pipeline connected by OS pipes, and each
+     * of the shell's commands runs on a thread of its own, reading the output of the stage before it and writing
+     * to the input of the stage after it.
+     *
+     * @param redirections The commands in the pipeline, in order, and their file redirections.
+     */
+    private static void runWithFileCommands(List<Redirections> redirections) {
+        File currentDir = new File(System.getProperty("user.dir"));
+        int count = redirections.size();
+        String[][] commands = new String[count][];
+        boolean[] fileCommand = new boolean[count];
+        for (int i = 0; i < count; ++i) {
+            commands[i] = redirections.get(i).command.toArray(new String[0]);
+            fileCommand[i] = FileCommands.isFileCommand(commands[i][0]);
+        }
+        // The shell's own input is for commands, so a first stage must be given what to read:
+        if (fileCommand[0] && redirections.get(0).input == null && FileCommands.readsInput(commands[0])) {
+            System.out.printf("Command \"%s\" must be given a file, or input with \"<\"\n", commands[0][0]);
+            return;
+        }
+
+        ChildUsage usage = ChildUsage.start();    // Start measuring the time and memory
+        Process[] stageProcesses = new Process[count];
+        List<Process> processes = new ArrayList<>();
+        boolean[] stopped = new boolean[count];
+        List<CompletableFuture<Void>> stoppers = new ArrayList<>();
+        try {
+            for (int i = 0; i < count; ) {
+                if (fileCommand[i]) {
+                    ++i;
+                    continue;
+                }
+                int first = i;
+                List<ProcessBuilder> processBuilders = new ArrayList<>();
+                for (; i < count && !fileCommand[i]; ++i) {
+                    ProcessBuilder processBuilder = new ProcessBuilder(resolveExecutable(commands[i]));
+                    processBuilder.directory(currentDir);
+                    processBuilder.redirectError(ProcessBuilder.Redirect.INHERIT);
+                    if (i == 0) {
+                        processBuilder.redirectInput(ProcessBuilder.Redirect.INHERIT);
+                    }
+                    if (i == count - 1) {
+                        processBuilder.redirectOutput(ProcessBuilder.Redirect.INHERIT);
+                    }
+                    redirections.get(i).apply(processBuilder);
+                    processBuilders.add(processBuilder);
+                }
+                List<Process> started = ProcessBuilder.startPipeline(processBuilders);
+                for (int p = 0; p < started.size(); ++p) {
+                    stageProcesses[first + p] = started.get(p);
+                }
+                processes.addAll(started);
+                stoppers.addAll(stopWritersOnExit(started, stopped, first));
             }
+        } catch (IOException e) {                   // If a stage can't be started, stop the ones that were
+            for (Process process : processes) {
+                process.destroy();
+            }
+            System.out.println("Invalid pipeline: " + e.getMessage());
+            return;
+        }
+        usage.watch(processes);
 
-            long end = System.currentTimeMillis();   // Save current time for end time
-            totalChildProcessTime += (end - start);  // Add the elapsed time (end - start) to total time
+        int[] exitStatus = new int[count];
+        boolean[] finished = new boolean[count];
+        Thread[] threads = new Thread[count];
+        PipedInputStream[] pipes = new PipedInputStream[count]; // Stage i's input, if stage i-1 is a file command
+        FileCommands runner = new FileCommands(currentDir);
+        System.out.flush();                         // Anything the shell printed before must come first
+        try {
+            for (int i = 0; i < count; ++i) {
+                if (!fileCommand[i]) {
+                    continue;
+                }
+                InputStream in;
+                if (i > 0) {
+                    in = fileCommand[i - 1] ? pipes[i] : stageProcesses[i - 1].getInputStream();
+                } else if (redirections.get(i).input != null) {
+                    in = new FileInputStream(redirections.get(i).input.file());
+                } else {
+                    in = InputStream.nullInputStream();
+                }
+                OutputStream out;
+                ProcessBuilder.Redirect output = redirections.get(i).output;
+                if (i < count - 1) {
+                    out = fileCommand[i + 1] ? new PipedOutputStream(pipes[i + 1] = new PipedInputStream(PIPE_BUFFER_SIZE))
+                            : stageProcesses[i + 1].getOutputStream();
+                } else if (output != null) {
+                    out = new FileOutputStream(output.file(), output.type() == ProcessBuilder.Redirect.Type.APPEND);
+                } else {
+                    out = new FileOutputStream(FileDescriptor.out);  // Never closed, as it's the shell's output
+                }
+
+                int stage = i;
+                threads[i] = new Thread(() -> {
+                    try {
+                        exitStatus[stage] = runner.run(commands[stage], in, out);
+                    } finally {
+                        try {   // Let the next stage see the end of its input, and stop the one before
+                            in.close();
+                            if (stage < count - 1 || output != null) {
+                                out.close();
+                            }
+                        } catch (IOException e) {
+                            // The stage around it has already exited
+                        }
+                        synchronized (finished) {
+                            finished[stage] = true;
+                            if (stage > 0 && (fileCommand[stage - 1] ? !finished[stage - 1]
+                                    : stoppedByReader(stageProcesses[stage - 1]))) {
+                                stopped[stage - 1] = true;
+                            }
+                            if (exitStatus[stage] == FileCommands.SIGPIPE_STATUS) {
+                                stopped[stage] = true;  // Its reader had exited, so writing to it failed
+                            }
+                        }
+                        if (stage > 0 && !fileCommand[stage - 1]) {
+                            stageProcesses[stage - 1].destroy();
+                        }
+                    }
+                }, commands[i][0]);
+                threads[i].start();
+            }
 
+            // Wait, from the last stage back to the first:
+            for (int i = count - 1; i >= 0; --i) {
+                if (fileCommand[i]) {
+                    threads[i].join();
+                } else {
+                    exitStatus[i] = stageProcesses[i].waitFor();
+                }
+            }
         } catch (Exception e) {
             System.out.println("Problem with piping: " + e);
+            for (Process process : processes) {
+                process.destroy();
+            }
+            return;
+        }
 
+        boolean failed = false;
+        for (int i = 0; i < count; ++i) {
+            if (i < count - 1 && !fileCommand[i] && !fileCommand[i + 1]) {
+                stoppers.remove(0).join();          // Stage i's reader has exited, so its callback is finishing
+            }
+            synchronized (finished) {
+                failed |= exitStatus[i] != 0 && !stopped[i];
+            }
+        }
+        if (failed && count > 1) {                  // Show which stages failed:
+            printExitStatus(redirections, exitStatus, stopped);
         }
+
+        lastUsage = usage.finish();                  // Stop measuring, and add to the totals
+        addChildUsage(lastUsage);
     }
 
     /**
-     * Helper function to write the output of a process to the input of another process.
+     * Helper function to print the exit status of every stage of a pipeline, e.g. "Exit status: grep 1 | wc 0".
      *
-     * @param p1 The "input from" process.
-     * @param p2 The "output to" process.
-     * @throws Exception Throws any read exceptions to be caught by pipeExternal parent function.
-     */
-    private static void pipeProcesses(Process p1, Process p2) throws Exception {
-        // Write output of p1 to input of p2:
-        int data;
-        while ((data = p1.getInputStream().read()) != -1) { // Read from p1's input stream while it still has data
-            p2.getOutputStream().write(data);               //      Then write that date to p2's output stream
-        }
-        p2.getOutputStream().flush();                    // Flush and close p2's output stream:
-        p2.getOutputStream().close();
+     * @param stages     The commands in the pipeline (without their redirections).
+     * @param exitStatus The exit status of each command.
+     * @param stopped    Whether each command was stopped because the next one exited.
+     */
+    private static void printExitStatus(List<Redirections> stages, int[] exitStatus, boolean[] stopped) {
+        StringBuilder status = new StringBuilder("Exit status:");
+        for (int i = 0; i < stages.size(); ++i) {
+            status.append(i > 0 ? " |" : "").append(' ').append(stages.get(i).command.get(0)).append(' ')
+                    .append(stopped[i] ? "stopped" : Integer.toString(exitStatus[i]));
+        }
+        System.out.println(status);
     }
 
     /**
      * Runs a single process from the specified command.
      *
-     * @param command The command to run.
-     * @param noWait  If true the shell will not wait for child process to finish. Otherwise, it will.
+     * @param command      The command to run.
+     * @param redirections The command's file redirections, and the command without them.
+     * @param noWait       If true the shell will not wait for child process to finish. Otherwise, it will.
      */
-    private static void runExternal(String[] command, boolean noWait) {
-        ProcessBuilder processBuilder = new ProcessBuilder(command);
+    private static void runExternal(String[] command, Redirections redirections, boolean noWait) {
+        ProcessBuilder processBuilder = new ProcessBuilder(resolveExecutable(redirections.command.toArray(new String[0])));
         processBuilder.redirectInput(ProcessBuilder.Redirect.INHERIT); // Inherit from shell's input.
         processBuilder.redirectOutput(ProcessBuilder.Redirect.INHERIT); // Output to shell's output.
+        processBuilder.redirectError(ProcessBuilder.Redirect.INHERIT);  // Errors to shell's error output.
+        redirections.apply(processBuilder);                             // Unless any of them go to files.
         // Set new process directory to shell's current directory:
         processBuilder.directory(new File(System.getProperty("user.dir")));
 
         try {                                       // Try to run the process:
-            long start = System.currentTimeMillis();    // Save current time for start time
+            ChildUsage usage = ChildUsage.start();      // Start measuring the time and memory
             Process process = processBuilder.start();  // Start the process
 
-            if (!noWait) {                           // Wait if noWait is false:
-                process.waitFor();
+            if (noWait) {                            // Track it as a job if noWait is true:
+                jobs.add(String.join(" ", command), List.of(process));
+                return;
             }
+            usage.watch(List.of(process));
+            process.waitFor();                       // Otherwise wait
 
-            long end = System.currentTimeMillis();   // Save current time for end time
-            totalChildProcessTime += (end - start);  // Add the elapsed time (end - start) to total time
+            lastUsage = usage.finish();              // Stop measuring, and add to the totals
+            addChildUsage(lastUsage);
 
         } catch (IOException e) {                   // If there are problems running the process
-            System.out.println("Invalid command: " + command[0]);
+            System.out.println("Invalid command: " + redirections.command.get(0));
         } catch (Exception e) {                     // Or any other problems:
             System.out.println("Other problem: " + e);
         }
     }
 
+    /**
+     * Runs an external command once for each of a list of arguments, several at a time.
+     * Command to execute: "parallel [-j N] [-k] [command] [::: arg... | :::: file]"
+     * Without ":::" or "::::", the arguments are read from the shell's input, one per line, up to a blank line.
+     *
+     * @param commandArgs The parallel command, its options, the command to run, and the arguments.
+     */
+    private static void runParallel(String[] commandArgs) {
+        int slots = Runtime.getRuntime().availableProcessors();
+        boolean keepOrder = false;
+        int i = 1;
+        try {
+            for (; i < commandArgs.length && commandArgs[i].startsWith("-"); ++i) {
+                if (commandArgs[i].equals("-k")) {
+                    keepOrder = true;
+                } else if (commandArgs[i].equals("-j")) {
+                    slots = Integer.parseInt(commandArgs[++i]);
+                } else {
+                    System.out.printf("parallel: unknown option \"%s\"\n", commandArgs[i]);
+                    return;
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException ex) {
+            System.out.println("Option \"-j\" must be followed by a number");
+            return;
+        }
+        if (slots < 1) {
+            System.out.println("Option \"-j\" must be followed by a number");
+            return;
+        }
+
+        // The command runs up to ":::" (arguments follow) or "::::" (a file of arguments follows):
+        int separator = i;
+        while (separator < commandArgs.length && !commandArgs[separator].equals(":::")
+                && !commandArgs[separator].equals("::::")) {
+            ++separator;
+        }
+        if (separator == i) {
+            System.out.println("Command \"parallel\" must be followed by a command");
+            return;
+        }
+        String[] command = resolveExecutable(Arrays.copyOfRange(commandArgs, i, separator));
+
+        List<String> arguments = new ArrayList<>();
+        File currentDir = new File(System.getProperty("user.dir"));
+        if (separator == commandArgs.length) {           // Read them from the shell's input
+            while (input.hasNextLine()) {
+                String line = input.nextLine();
+                if (line.isEmpty()) {
+                    break;
+                }
+                arguments.add(line);
+            }
+        } else if (commandArgs[separator].equals(":::")) {
+            arguments.addAll(Arrays.asList(commandArgs).subList(separator + 1, commandArgs.length));
+        } else {
+            for (int f = separator + 1; f < commandArgs.length; ++f) {
+                Path file = currentDir.toPath().resolve(commandArgs[f]);
+                try {
+                    for (String line : Files.readAllLines(file)) {
+                        if (!line.isEmpty()) {
+                            arguments.add(line);
+                        }
+                    }
+                } catch (IOException e) {
+                    System.out.printf("parallel failed: \"%s\" can't be read (%s)\n", commandArgs[f], e);
+                    return;
+                }
+            }
+        }
+
+        ChildUsage usage = ChildUsage.start();
+        new ParallelRunner(slots, keepOrder).run(command, arguments, currentDir);
+        lastUsage = usage.finish();
+        addChildUsage(lastUsage);
+    }
+
+    /**
+     * Helper function to replace a command's name with the absolute path of its executable, so the process is
+     * started without searching the PATH again.
+     *
+     * @param command The command and its arguments.
+     * @return A copy of the command starting with the executable's path, or the command itself if it isn't found.
+     */
+    private static String[] resolveExecutable(String[] command) {
+        String executable = executables.resolve(command[0]);
+        if (executable.equals(command[0])) {
+            return command;
+        }
+        String[] resolved = command.clone();
+        resolved[0] = executable;
+        return resolved;
+    }
+
     /**
      * "Split the user command by spaces, but preserving them when inside double-quotes.
      * Code Adapted from:
@@ -335,8 +1070,7 @@ public class Assign3 {
     private static String[] splitCommand(String command) {
         java.util.List<String> matchList = new java.util.ArrayList<>();
 
-        Pattern regex = Pattern.compile("[^\\s\"']+|\"([^\"]*)\"|'([^']*)'");
-        Matcher regexMatcher = regex.matcher(command);
+        Matcher regexMatcher = WORD.matcher(command);
 
         while (regexMatcher.find()) {
             if (regexMatcher.group(1) != null) {
@@ -353,4 +1087,21 @@ public class Assign3 {
 
         return matchList.toArray(new String[matchList.size()]);
     }
+
+    /**
+     * Returns whether each word that splitCommand splits the command into was quoted.
+     */
+    private static boolean[] quotedWords(String command) {
+        List<Boolean> quoted = new ArrayList<>();
+        Matcher regexMatcher = WORD.matcher(command);
+        while (regexMatcher.find()) {
+            quoted.add(regexMatcher.group(1) != null || regexMatcher.group(2) != null);
+        }
+
+        boolean[] words = new boolean[quoted.size()];
+        for (int i = 0; i < words.length; ++i) {
+            words[i] = quoted.get(i);
+        }
+        return words;
+    }
 }
@@ -0,0 +1,179 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the resources used by the child processes of one command: the wall time (with System.nanoTime),
+ * the user and system CPU time, and the peak resident memory.
+ *
+ * On Linux the CPU time comes from the cutime and cstime fields of /proc/self/stat, which add up the CPU
+ * time of every child the JVM has waited for, so the difference across a command is the CPU time of its
+ * processes (plus that of any background job that finished meanwhile). The peak memory can only be read
+ * while a process is alive, so each process's high water mark (VmHWM in /proc/[pid]/status) is sampled
+ * until it exits. Elsewhere the CPU time is sampled from ProcessHandle.Info, which can't split it into
+ * user and system time.
+ *
+ * @author Ky Kartchner
+ */
+class ChildUsage {
+    private static final Path SELF_STAT = Paths.get("/proc/self/stat");
+
+    /**
+     * The clock tick of /proc's times; USER_HZ is 100 on every Linux architecture
+     */
+    private static final long NANOS_PER_TICK = 10_000_000L;
+
+    /**
+     * Time between samples of a running process's memory and CPU time
+     */
+    private static final long SAMPLE_MILLIS = 10;
+
+    private static final ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "child-usage-sampler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final long startNanos = System.nanoTime();
+    private final long[] startCpu = childrenCpuNanos();
+    private final Map<Long, Long> peakRssKb = new HashMap<>(); // pid -> highest VmHWM seen
+    private final Map<Long, Long> cpuNanos = new HashMap<>();  // pid -> latest CPU time (without /proc only)
+    private List<Process> processes = List.of();
+    private ScheduledFuture<?> sampling = null;
+
+    long wallNanos = -1;
+    long userNanos = -1;   // -1 if unknown
+    long systemNanos = -1; // -1 if unknown
+    long peakRssBytes = -1; // -1 if no sample was taken before the processes exited
+
+    /**
+     * Starts measuring a command now.
+     */
+    static ChildUsage start() {
+        return new ChildUsage();
+    }
+
+    /**
+     * Returns the total user and system CPU time of all the children this process has waited for, or
+     * null if it isn't available (not Linux).
+     *
+     * @return {user nanoseconds, system nanoseconds}, or null.
+     */
+    static long[] childrenCpuNanos() {
+        try {
+            String stat = Files.readString(SELF_STAT);
+            // The fields after the command name (which is in parentheses and may contain spaces), starting
+            // with field 3; cutime and cstime are fields 16 and 17
+            String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+            return new long[]{Long.parseLong(fields[13]) * NANOS_PER_TICK, Long.parseLong(fields[14]) * NANOS_PER_TICK};
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Starts sampling the specified processes' memory (and CPU time where /proc isn't available) until
+     * finish() is called.
+     *
+     * @param processes The processes started for the command.
+     */
+    void watch(List<Process> processes) {
+        this.processes = processes;
+        sampling = sampler.scheduleAtFixedRate(this::sample, 0, SAMPLE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops measuring, after the command's processes have exited and been waited for.
+     *
+     * @return This measurement, with its results filled in.
+     */
+    ChildUsage finish() {
+        wallNanos = System.nanoTime() - startNanos;
+        if (sampling != null) {
+            sampling.cancel(false);
+        }
+
+        synchronized (this) {
+            long[] endCpu = childrenCpuNanos();
+            if (startCpu != null && endCpu != null) {
+                userNanos = endCpu[0] - startCpu[0];
+                systemNanos = endCpu[1] - startCpu[1];
+            } else if (!cpuNanos.isEmpty()) {
+                userNanos = cpuNanos.values().stream().mapToLong(Long::longValue).sum();
+            }
+            if (!peakRssKb.isEmpty()) {
+                // The processes of a pipeline run at the same time, so their peaks add up
+                peakRssBytes = peakRssKb.values().stream().mapToLong(Long::longValue).sum() * 1024;
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Records the high water mark of each live process's memory, and its CPU time without /proc.
+     */
+    private synchronized void sample() {
+        for (Process process : processes) {
+            if (!process.isAlive()) {
+                continue;
+            }
+            long pid = process.pid();
+            long hwm = readHighWaterMarkKb(pid);
+            if (hwm >= 0) {
+                peakRssKb.merge(pid, hwm, Math::max);
+            }
+            if (startCpu == null) {
+                process.info().totalCpuDuration().ifPresent(cpu -> cpuNanos.put(pid, cpu.toNanos()));
+            }
+        }
+    }
+
+    /**
+     * Reads VmHWM, the peak resident set size, of a process in KB, or returns -1 if it can't be read.
+     */
+    private static long readHighWaterMarkKb(long pid) {
+        try {
+            for (String line : Files.readAllLines(Paths.get("/proc", Long.toString(pid), "status"))) {
+                if (line.startsWith("VmHWM:")) {
+                    return Long.parseLong(line.substring(6).trim().split("\\s+")[0]);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // The process exited, or this isn't Linux
+        }
+        return -1;
+    }
+
+    /**
+     * Prints the measurement in the style of the UNIX time command.
+     */
+    void print() {
+        System.out.printf("real    %s\n", format(wallNanos));
+        if (systemNanos >= 0) {
+            System.out.printf("user    %s\n", format(userNanos));
+            System.out.printf("sys     %s\n", format(systemNanos));
+        } else if (userNanos >= 0) {
+            System.out.printf("cpu     %s\n", format(userNanos));
+        }
+        if (peakRssBytes >= 0) {
+            System.out.printf("maxrss  %.1f MB\n", peakRssBytes / (1024.0 * 1024.0));
+        }
+    }
+
+    /**
+     * Formats nanoseconds as e.g. "0m1.234s".
+     */
+    static String format(long nanos) {
+        Duration duration = Duration.ofNanos(nanos);
+        return String.format("%dm%d.%03ds", duration.toMinutes(), duration.toSecondsPart(), duration.toMillisPart());
+    }
+}
@@ -0,0 +1,562 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The shell's command history, kept in files so it lasts between sessions and is shared by all the sessions
+ * running at once. The commands are appended to a log (one line each, in UTF-8), which is read through a memory
+ * mapping, and the start of each command in the log is recorded in an index file of fixed size records, along
+ * with how long the command took, so any command can be found by its number without reading the ones before it.
+ * Appending takes a lock on the index file, so commands from different sessions never interleave.
+ *
+ * Nothing is kept in memory for each command except for searching: the first search builds an index from each
+ * trigram (three consecutive bytes) to the numbers of the commands containing it, stored as delta encoded
+ * variable length integers (one or two bytes per command and trigram), and later searches add the new commands
+ * to it. A search only checks the indexed commands that contain every trigram of the text searched for. The
+ * index is limited to MAX_INDEX_BYTES; the commands after the ones indexed by the time it is full are searched
+ * by reading each of them, as are all commands when the text is too short to have a trigram.
+ *
+ * The history is in ~/.assign3_history unless the ASSIGN3_HISTFILE environment variable names another file.
+ *
+ * @author Ky Kartchner
+ */
+class CommandHistory {
+    /**
+     * Bytes in each index record: the command's offset in the log, and its latency in nanoseconds (-1 if unknown)
+     */
+    private static final int RECORD_SIZE = 16;
+
+    /**
+     * Size of the output buffer
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Buckets in the histogram of latencies used to find their median (see bucket)
+     */
+    private static final int LATENCY_BUCKETS = 64 * 8;
+
+    /**
+     * The most memory (roughly) the trigram index may take; no more commands are indexed once it is reached
+     */
+    private static final long MAX_INDEX_BYTES = 32L << 20;
+
+    /**
+     * Memory taken by each trigram in the index besides its postings: the map entry, the key, the Postings
+     * object, and its array's header
+     */
+    private static final int TRIGRAM_OVERHEAD = 96;
+
+    private final FileChannel log;
+    private final FileChannel index;
+    private MappedByteBuffer mapped = null;     // The log, as far as it was when last mapped
+
+    private final Map<Integer, Postings> trigrams = new HashMap<>();
+    private long indexedTo = 0;                 // Commands up to this number are in the trigram index
+    private long indexBytes = 0;                // Memory taken by the trigram index, roughly
+
+    /**
+     * The numbers of the commands containing one trigram, in increasing order
+     */
+    private static class Postings {
+        byte[] data = new byte[4];
+        int length = 0;
+        long last = 0;
+
+        /**
+         * Adds a command number, greater than or equal to the last one added (repeats are ignored).
+         */
+        void add(long number) {
+            if (number == last) {
+                return;
+            }
+            long delta = number - last;
+            last = number;
+            if (length + 10 > data.length) {
+                data = Arrays.copyOf(data, data.length * 2 + 10);
+            }
+            while (delta >= 0x80) {             // Seven bits at a time, the high bit set if more follow
+                data[length++] = (byte) (delta | 0x80);
+                delta >>>= 7;
+            }
+            data[length++] = (byte) delta;
+        }
+
+        /**
+         * Returns the command numbers.
+         */
+        long[] decode() {
+            long[] numbers = new long[length];
+            int count = 0;
+            long number = 0;
+            for (int i = 0; i < length; ) {
+                long delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[i++];
+                    delta |= (long) (b & 0x7f) << shift;
+                    shift += 7;
+                } while (b < 0);
+                number += delta;
+                numbers[count++] = number;
+            }
+            return Arrays.copyOf(numbers, count);
+        }
+    }
+
+    private CommandHistory(FileChannel log, FileChannel index) {
+        this.log = log;
+        this.index = index;
+    }
+
+    /**
+     * Opens the history shared by all sessions, creating it if there is none. If it can't be opened, a history
+     * for this session only is used instead.
+     *
+     * @return The history.
+     */
+    static CommandHistory open() {
+        String name = System.getenv("ASSIGN3_HISTFILE");
+        Path path = name != null ? Paths.get(name) : Paths.get(System.getProperty("user.home"), ".assign3_history");
+        try {
+            return open(path);
+        } catch (IOException e) {
+            System.out.printf("History can't be saved to \"%s\" (%s); it will only last this session\n", path, e);
+            try {
+                File temporary = File.createTempFile("assign3_history", "");
+                temporary.deleteOnExit();
+                new File(temporary.getPath() + ".idx").deleteOnExit();
+                return open(temporary.toPath());
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+
+    private static CommandHistory open(Path path) throws IOException {
+        FileChannel log = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        FileChannel index = FileChannel.open(Paths.get(path + ".idx"), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        return new CommandHistory(log, index);
+    }
+
+    /**
+     * Returns the number of commands in the history, including those added by other sessions.
+     *
+     * @return The number of the last command.
+     */
+    long size() {
+        try {
+            return index.size() / RECORD_SIZE;  // A record being written by another session isn't counted yet
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Adds a command to the end of the history, with an unknown latency.
+     *
+     * @param command The command, on one line.
+     * @return The command's number.
+     */
+    long add(String command) {
+        byte[] line = (command + "\n").getBytes(StandardCharsets.UTF_8);
+        try {
+            FileLock lock = index.lock();
+            try {
+                // Both ends are read under the lock, as other sessions append too. A command written to the log
+                // by a session that stopped before indexing it is left in the log but skipped.
+                long number = index.size() / RECORD_SIZE + 1;
+                long offset = log.size();
+                writeFully(log, ByteBuffer.wrap(line), offset);
+                ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE).putLong(offset).putLong(-1);
+                writeFully(index, record.flip(), (number - 1) * RECORD_SIZE);
+                return number;
+            } finally {
+                lock.release();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Records how long a command took.
+     *
+     * @param number The command's number.
+     * @param nanos  How long it took, in nanoseconds.
+     */
+    void setLatency(long number, long nanos) {
+        try {
+            writeFully(index, ByteBuffer.allocate(Long.BYTES).putLong(nanos).flip(), (number - 1) * RECORD_SIZE + Long.BYTES);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns a command from the history, from its offset in the index and the start of the next command.
+     *
+     * @param number The command's number, from 1 to size().
+     * @return The command.
+     */
+    String get(long number) {
+        try {
+            ByteBuffer records = ByteBuffer.allocate(RECORD_SIZE + Long.BYTES);
+            readFully(index, records, (number - 1) * RECORD_SIZE);
+            long start = records.getLong(0);
+            // The next command starts after this one's newline; the last one ends with the log's newline
+            long end = records.limit() == records.capacity() ? records.getLong(RECORD_SIZE) : log.size();
+            byte[] line = read(start, (int) (end - start));
+            int length = 0;
+            while (length < line.length && line[length] != '\n') {  // Skip anything a stopped session left after it
+                ++length;
+            }
+            return new String(line, 0, length, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Prints the commands from a number to the end with how long each took, marking those that took 10 times
+     * the median (and at least 100 ms) of the ones printed as slow. A command without a latency hasn't finished
+     * (or its session stopped). The records are read a block at a time, twice: first to find the median, from
+     * a histogram of the latencies, then to print the commands.
+     * Command to execute: "history [N]"
+     *
+     * @param from The number of the first command to print.
+     */
+    void print(long from) {
+        long size = size();
+        int block = BUFFER_SIZE / RECORD_SIZE;
+        long[] offset = new long[block];
+        long[] latency = new long[block];
+
+        long[] histogram = new long[LATENCY_BUCKETS];
+        long timed = 0;
+        for (long first = from; first <= size; first += block) {
+            int count = (int) Math.min(block, size - first + 1);
+            readRecords(first, offset, latency);
+            for (int i = 0; i < count; ++i) {
+                if (latency[i] >= 0) {
+                    ++histogram[bucket(latency[i])];
+                    ++timed;
+                }
+            }
+        }
+        long median = 0;
+        long seen = 0;
+        for (int b = 0; timed > 0 && b < LATENCY_BUCKETS; ++b) {
+            seen += histogram[b];
+            if (seen > timed / 2) {
+                median = bucketStart(b);
+                break;
+            }
+        }
+        long slow = Math.max(100_000_000L, 10 * median);
+
+        System.out.println("-- Command History --");
+        System.out.flush();
+        Writer out = output();
+        try {
+            for (long first = from; first <= size; first += block) {
+                int count = (int) Math.min(block, size - first + 1);
+                readRecords(first, offset, latency);
+                for (int i = 0; i < count; ++i) {
+                    long nanos = latency[i];
+                    out.write(Long.toString(first + i));
+                    out.write(" : ");
+                    out.write(commandAt(offset[i]));
+                    if (nanos >= 0) {
+                        out.write(String.format("  (%.3f s)%s", nanos / 1e9, nanos >= slow ? "  <- slow" : ""));
+                    }
+                    out.write('\n');
+                }
+            }
+            out.flush(); // Not closed, as that would close the shell's output
+        } catch (IOException e) {
+            // The shell's output is gone; nothing more can be printed
+        }
+    }
+
+    /**
+     * Returns the histogram bucket of a latency: its highest bit and the 3 bits after it, so each bucket is
+     * within 12.5% of the latencies in it.
+     */
+    private static int bucket(long nanos) {
+        int bits = 64 - Long.numberOfLeadingZeros(nanos);
+        return bits <= 4 ? (int) nanos : (bits - 3) * 8 + (int) (nanos >>> (bits - 4) & 7);
+    }
+
+    /**
+     * Returns the smallest latency in a histogram bucket.
+     */
+    private static long bucketStart(int bucket) {
+        return bucket < 16 ? bucket : (long) (8 | bucket & 7) << (bucket / 8 - 1);
+    }
+
+    /**
+     * Prints the number and text of each command containing a text.
+     * Command to execute: "history -s [text]"
+     *
+     * @param text The text to search for.
+     */
+    void search(String text) {
+        byte[] pattern = text.getBytes(StandardCharsets.UTF_8);
+        long size = size();
+        indexCommands(size);
+
+        long[] candidates = null;   // null means every command (the text is too short to have a trigram)
+        List<Postings> lists = new ArrayList<>();
+        for (int i = 0; i + 3 <= pattern.length; ++i) {
+            Postings postings = trigrams.get(trigram(pattern, i));
+            if (postings == null) {
+                lists.clear();
+                candidates = new long[0];           // No indexed command has it
+                break;
+            }
+            lists.add(postings);
+        }
+        lists.sort((a, b) -> Integer.compare(a.length, b.length));  // Intersect starting with the shortest
+        for (Postings postings : lists) {
+            candidates = candidates == null ? postings.decode() : intersect(candidates, postings.decode());
+        }
+
+        Writer out = output();
+        try {
+            if (candidates != null) {
+                for (long number : candidates) {
+                    String command = get(number);
+                    if (command.contains(text)) {   // Having every trigram doesn't mean having them in order
+                        out.write(number + " : " + command + "\n");
+                    }
+                }
+                scan(text, indexedTo + 1, size, out);
+            } else {
+                scan(text, 1, size, out);
+            }
+            out.flush(); // Not closed, as that would close the shell's output
+        } catch (IOException e) {
+            // The shell's output is gone; nothing more can be printed
+        }
+    }
+
+    /**
+     * Prints the number and text of each command in a range that contains a text, checking every one of them
+     * and reading the records a block at a time.
+     */
+    private void scan(String text, long first, long last, Writer out) throws IOException {
+        int block = BUFFER_SIZE / RECORD_SIZE;
+        long[] offset = new long[block];
+        for (long from = first; from <= last; from += block) {
+            int count = (int) Math.min(block, last - from + 1);
+            readRecords(from, offset, null);
+            for (int i = 0; i < count; ++i) {
+                String command = commandAt(offset[i]);
+                if (command.contains(text)) {
+                    out.write((from + i) + " : " + command + "\n");
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a writer to the shell's output with a large buffer, after flushing what the shell printed before.
+     */
+    private static Writer output() {
+        System.out.flush();
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(FileDescriptor.out)), BUFFER_SIZE);
+    }
+
+    /**
+     * Reads the index records of consecutive commands, a block of records at a time.
+     *
+     * @param from    The number of the first command.
+     * @param offset  Filled with the commands' offsets in the log (as many as fit, up to the last command).
+     * @param latency Filled with the commands' latencies, or null if they aren't needed.
+     */
+    private void readRecords(long from, long[] offset, long[] latency) {
+        int count = (int) Math.min(offset.length, Math.max(size() - from + 1, 0));
+        try {
+            ByteBuffer records = ByteBuffer.allocate(BUFFER_SIZE);
+            for (int n = 0; n < count; ) {
+                records.clear().limit((int) Math.min((long) (count - n) * RECORD_SIZE, BUFFER_SIZE));
+                readFully(index, records, (from - 1 + n) * RECORD_SIZE);
+                for (int r = 0; r + RECORD_SIZE <= records.limit(); r += RECORD_SIZE, ++n) {
+                    offset[n] = records.getLong(r);
+                    if (latency != null) {
+                        latency[n] = records.getLong(r + Long.BYTES);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns the command starting at an offset in the log, reading it from the mapping up to its newline.
+     */
+    private String commandAt(long offset) throws IOException {
+        if (mapped == null || offset >= mapped.capacity()) {
+            map();
+        }
+        if (offset >= mapped.capacity()) {          // Past what can be mapped
+            ByteBuffer line = ByteBuffer.allocate(BUFFER_SIZE);
+            readFully(log, line, offset);
+            int length = 0;
+            while (length < line.limit() && line.get(length) != '\n') {
+                ++length;
+            }
+            return new String(line.array(), 0, length, StandardCharsets.UTF_8);
+        }
+        int end = (int) offset;
+        while (end < mapped.capacity() && mapped.get(end) != '\n') {
+            ++end;
+        }
+        byte[] line = new byte[end - (int) offset];
+        mapped.get((int) offset, line);
+        return new String(line, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Adds the commands added since the last search to the trigram index, reading the index file a block of
+     * records at a time and the commands straight from the mapped log, until the index takes MAX_INDEX_BYTES.
+     *
+     * @param size The number of commands to index up to.
+     */
+    private void indexCommands(long size) {
+        if (indexedTo >= size || indexBytes >= MAX_INDEX_BYTES) {
+            return;
+        }
+        try {
+            map();
+            ByteBuffer records = ByteBuffer.allocate(BUFFER_SIZE);
+            while (indexedTo < size && indexBytes < MAX_INDEX_BYTES) {
+                records.clear().limit((int) Math.min((size - indexedTo) * RECORD_SIZE, BUFFER_SIZE));
+                readFully(index, records, indexedTo * RECORD_SIZE);
+                for (int r = 0; r < records.limit() && indexBytes < MAX_INDEX_BYTES; r += RECORD_SIZE) {
+                    long number = ++indexedTo;
+                    long start = records.getLong(r);
+                    if (start + 3 > mapped.capacity() || mapped.get((int) start) == '\n'
+                            || mapped.get((int) start + 1) == '\n') {  // Too short, or past what could be mapped
+                        byte[] command = get(number).getBytes(StandardCharsets.UTF_8);
+                        for (int i = 0; i + 3 <= command.length; ++i) {
+                            addTrigram(trigram(command, i), number);
+                        }
+                        continue;
+                    }
+                    int key = (mapped.get((int) start) & 0xff) << 8 | (mapped.get((int) start + 1) & 0xff);
+                    for (int i = (int) start + 2; i < mapped.capacity() && mapped.get(i) != '\n'; ++i) {
+                        key = (key << 8 | (mapped.get(i) & 0xff)) & 0xffffff;
+                        addTrigram(key, number);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Adds a command to the postings of a trigram, counting the memory this takes.
+     */
+    private void addTrigram(int key, long number) {
+        Postings postings = trigrams.get(key);
+        if (postings == null) {
+            postings = new Postings();
+            trigrams.put(key, postings);
+            indexBytes += TRIGRAM_OVERHEAD + postings.data.length;
+        }
+        int before = postings.data.length;
+        postings.add(number);
+        indexBytes += postings.data.length - before;
+    }
+
+    private static int trigram(byte[] bytes, int i) {
+        return (bytes[i] & 0xff) << 16 | (bytes[i + 1] & 0xff) << 8 | (bytes[i + 2] & 0xff);
+    }
+
+    /**
+     * Returns the numbers in both sorted arrays.
+     */
+    private static long[] intersect(long[] a, long[] b) {
+        long[] both = new long[Math.min(a.length, b.length)];
+        int count = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+            if (a[i] < b[j]) {
+                ++i;
+            } else if (a[i] > b[j]) {
+                ++j;
+            } else {
+                both[count++] = a[i];
+                ++i;
+                ++j;
+            }
+        }
+        return Arrays.copyOf(both, count);
+    }
+
+    /**
+     * Reads part of the log through the mapping, mapping it again if the log has grown past it. A log too
+     * large to map at once is read directly.
+     */
+    private byte[] read(long offset, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        if (mapped == null || offset + length > mapped.capacity()) {
+            map();
+        }
+        if (offset + length > mapped.capacity()) {
+            readFully(log, ByteBuffer.wrap(bytes), offset);
+        } else {
+            mapped.get((int) offset, bytes);
+        }
+        return bytes;
+    }
+
+    /**
+     * Maps the log as far as it is now, or its first 2 GiB if it's larger than a mapping can be.
+     */
+    private void map() throws IOException {
+        mapped = log.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(log.size(), Integer.MAX_VALUE));
+    }
+
+    /**
+     * Reads from a position until the buffer is full or the end of the file, then flips the buffer.
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+}
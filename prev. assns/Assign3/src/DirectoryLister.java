@@ -0,0 +1,422 @@
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.sun.security.auth.module.UnixSystem;
+
+/**
+ * Lists directories in a format similar to "ls -l": "[permissions for current user] [size in bytes] [date last
+ * modified] [name of file]". Entries are read with a DirectoryStream, so a huge directory is never held in
+ * memory unless it has to be sorted, and all of an entry's attributes are read with a single call (one
+ * lstat on UNIX) instead of one call per attribute. The output goes through one large buffer, and the dates
+ * are formatted with a shared DateTimeFormatter, reusing the text while consecutive entries were modified
+ * in the same minute.
+ *
+ * Listings can be sorted, recurse into subdirectories (without following symbolic links), and list
+ * subdirectories in parallel on a ForkJoinPool. In parallel, each directory's listing is still printed in order,
+ * as soon as it and the ones before it are done, so only the listings waiting for an earlier one are held.
+ *
+ * @author Ky Kartchner
+ */
+class DirectoryLister {
+    /**
+     * The order to list entries in
+     */
+    enum Order {
+        DIRECTORY,  // As the directory stream returns them (no sorting)
+        NAME,
+        SIZE,       // Largest first
+        TIME        // Newest first
+    }
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("MMM d, yyyy HH:mm")
+            .withZone(ZoneId.systemDefault());
+
+    /**
+     * Size of the output buffer
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Order order;
+    private final boolean recursive;
+    private final boolean parallel;
+
+    /**
+     * The attributes read for each entry on a UNIX file system, with a single lstat
+     */
+    private static final String UNIX_ATTRIBUTES = "unix:size,lastModifiedTime,lastAccessTime,creationTime,"
+            + "isRegularFile,isDirectory,isSymbolicLink,isOther,fileKey,uid,gid,mode";
+
+    /**
+     * Whether the file system has UNIX attributes; if not, each permission is checked separately
+     */
+    private final boolean unix;
+    private final long uid;         // The current user's ids, if unix
+    private final long[] gids;      // Its primary group and the others it belongs to
+
+    /**
+     * An entry's attributes read from the "unix" view, with its owner and mode as numbers (so no user or group
+     * names are looked up)
+     */
+    private static class UnixAttributes implements BasicFileAttributes {
+        private final Map<String, Object> attributes;
+        final int uid;
+        final int gid;
+        final int mode;
+
+        UnixAttributes(Map<String, Object> attributes) {
+            this.attributes = attributes;
+            uid = (Integer) attributes.get("uid");
+            gid = (Integer) attributes.get("gid");
+            mode = (Integer) attributes.get("mode");
+        }
+
+        @Override
+        public FileTime lastModifiedTime() {
+            return (FileTime) attributes.get("lastModifiedTime");
+        }
+
+        @Override
+        public FileTime lastAccessTime() {
+            return (FileTime) attributes.get("lastAccessTime");
+        }
+
+        @Override
+        public FileTime creationTime() {
+            return (FileTime) attributes.get("creationTime");
+        }
+
+        @Override
+        public boolean isRegularFile() {
+            return (Boolean) attributes.get("isRegularFile");
+        }
+
+        @Override
+        public boolean isDirectory() {
+            return (Boolean) attributes.get("isDirectory");
+        }
+
+        @Override
+        public boolean isSymbolicLink() {
+            return (Boolean) attributes.get("isSymbolicLink");
+        }
+
+        @Override
+        public boolean isOther() {
+            return (Boolean) attributes.get("isOther");
+        }
+
+        @Override
+        public long size() {
+            return (Long) attributes.get("size");
+        }
+
+        @Override
+        public Object fileKey() {
+            return attributes.get("fileKey");
+        }
+    }
+
+    /**
+     * One directory entry and its attributes, kept when the listing is sorted
+     */
+    private static class Entry {
+        final Path path;
+        final BasicFileAttributes attributes;
+
+        Entry(Path path, BasicFileAttributes attributes) {
+            this.path = path;
+            this.attributes = attributes;
+        }
+    }
+
+    /**
+     * Creates a lister with the specified options.
+     *
+     * @param order     The order to list each directory's entries in.
+     * @param recursive Whether to list the subdirectories too.
+     * @param parallel  Whether to list subdirectories in parallel (only if recursive).
+     * @param unix      Whether the file system supports the "unix" attribute view.
+     */
+    DirectoryLister(Order order, boolean recursive, boolean parallel, boolean unix) {
+        this.order = order;
+        this.recursive = recursive;
+        this.parallel = parallel && recursive;
+        this.unix = unix;
+        long[] ids = unix ? userIds() : new long[]{-1};
+        uid = ids[0];
+        gids = Arrays.copyOfRange(ids, 1, ids.length);
+    }
+
+    /**
+     * Returns the ids permissions are checked with: the user's, then its group's and those of the other groups it
+     * belongs to. On Linux these are the file system ids in /proc/self/status; elsewhere they are looked up.
+     */
+    private static long[] userIds() {
+        try {
+            long uid = -1;
+            long gid = -1;
+            long[] groups = new long[0];
+            for (String line : Files.readAllLines(Paths.get("/proc/self/status"))) {
+                String[] fields = line.trim().split("\\s+");
+                if (fields[0].equals("Uid:")) {        // Real, effective, saved and file system ids
+                    uid = Long.parseLong(fields[4]);
+                } else if (fields[0].equals("Gid:")) {
+                    gid = Long.parseLong(fields[4]);
+                } else if (fields[0].equals("Groups:")) {
+                    groups = Arrays.stream(fields, 1, fields.length).mapToLong(Long::parseLong).toArray();
+                }
+            }
+            long[] ids = new long[groups.length + 2];
+            ids[0] = uid;
+            ids[1] = gid;
+            System.arraycopy(groups, 0, ids, 2, groups.length);
+            return ids;
+        } catch (IOException | RuntimeException e) {
+            UnixSystem system = new UnixSystem();
+            long[] groups = system.getGroups();
+            long[] ids = new long[groups.length + 2];
+            ids[0] = system.getUid();
+            ids[1] = system.getGid();
+            System.arraycopy(groups, 0, ids, 2, groups.length);
+            return ids;
+        }
+    }
+
+    /**
+     * Lists the specified directory to the shell's output.
+     *
+     * @param directory The directory to list.
+     * @throws IOException If the directory can't be read.
+     */
+    void list(Path directory) throws IOException {
+        System.out.flush(); // Anything the shell printed before must come first
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(FileDescriptor.out)), BUFFER_SIZE);
+        try {
+            if (parallel) {
+                ListTask task = new ListTask(directory, false);
+                ForkJoinPool.commonPool().execute(task);
+                write(task, out);
+            } else {
+                listTree(directory, out, false);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            out.flush(); // Not closed, as that would close the shell's output
+        }
+    }
+
+    /**
+     * Lists a directory and then, if recursive, each of its subdirectories.
+     *
+     * @param header Whether to print the directory's path before its entries (as "ls -R" does).
+     */
+    private void listTree(Path directory, Appendable out, boolean header) throws IOException {
+        List<Path> subdirectories = listDirectory(directory, out, header);
+        for (Path subdirectory : subdirectories) {
+            listTree(subdirectory, out, true);
+        }
+    }
+
+    /**
+     * Writes a directory's listing once its task is done, then those of its subdirectories in order, each as
+     * soon as it is done. The output is flushed before waiting, so what's done so far is shown.
+     */
+    private void write(ListTask task, Writer out) throws IOException {
+        if (!task.isDone()) {
+            out.flush();
+        }
+        task.join();
+        out.append(task.listing);
+        task.listing = null;    // Written, so no longer held
+        for (ListTask subtask : task.subtasks) {
+            write(subtask, out);
+        }
+    }
+
+    /**
+     * Lists one directory into a buffer and forks a task for each subdirectory, so the subtrees are listed in
+     * parallel while the listings done so far are written.
+     */
+    private class ListTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Path directory;
+        private final boolean header;
+        StringBuilder listing;
+        final List<ListTask> subtasks = new ArrayList<>();
+
+        ListTask(Path directory, boolean header) {
+            this.directory = directory;
+            this.header = header;
+        }
+
+        @Override
+        protected void compute() {
+            StringBuilder out = new StringBuilder();
+            try {
+                for (Path subdirectory : listDirectory(directory, out, header)) {
+                    ListTask subtask = new ListTask(subdirectory, true);
+                    subtask.fork();
+                    subtasks.add(subtask);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            listing = out;
+        }
+    }
+
+    /**
+     * Lists the entries of one directory.
+     *
+     * @return The subdirectories to list next if recursive (otherwise none).
+     */
+    private List<Path> listDirectory(Path directory, Appendable out, boolean header) throws IOException {
+        if (header) {
+            out.append('\n').append(directory.toString()).append(":\n");
+        }
+
+        List<Path> subdirectories = new ArrayList<>();
+        List<Entry> entries = order == Order.DIRECTORY ? null : new ArrayList<>();
+        StringBuilder line = new StringBuilder(128);
+        long[] lastMinute = {Long.MIN_VALUE};
+        String[] lastDate = {null};
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path path : stream) {
+                BasicFileAttributes attributes;
+                try {
+                    attributes = unix ? new UnixAttributes(Files.readAttributes(path, UNIX_ATTRIBUTES, LinkOption.NOFOLLOW_LINKS))
+                            : Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                } catch (IOException e) {
+                    continue; // Deleted since the directory was read
+                }
+                if (entries != null) {
+                    entries.add(new Entry(path, attributes));
+                } else {
+                    out.append(format(path, attributes, line, lastMinute, lastDate));
+                    if (recursive && attributes.isDirectory()) {
+                        subdirectories.add(path);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            if (!header) {
+                throw e;
+            }
+            out.append("list failed: ").append(e.toString()).append('\n'); // Keep listing the rest of the tree
+            return subdirectories;
+        }
+
+        if (entries != null) {  // Subdirectories are listed in the same order as the entries
+            entries.sort(comparator());
+            for (Entry entry : entries) {
+                out.append(format(entry.path, entry.attributes, line, lastMinute, lastDate));
+                if (recursive && entry.attributes.isDirectory()) {
+                    subdirectories.add(entry.path);
+                }
+            }
+        }
+        return subdirectories;
+    }
+
+    private Comparator<Entry> comparator() {
+        switch (order) {
+            case SIZE:
+                return Comparator.comparingLong((Entry entry) -> entry.attributes.size()).reversed();
+            case TIME:
+                return Comparator.comparing((Entry entry) -> entry.attributes.lastModifiedTime()).reversed();
+            default:
+                return Comparator.comparing(entry -> entry.path.getFileName().toString());
+        }
+    }
+
+    /**
+     * Formats one entry as "[d/l/-][r][w][x] [size] [date] [name]" into the reused line builder.
+     *
+     * @param lastMinute The minute of the last date formatted (updated)
+     * @param lastDate   The text of the last date formatted (updated)
+     */
+    private CharSequence format(Path path, BasicFileAttributes attributes, StringBuilder line, long[] lastMinute,
+                                String[] lastDate) {
+        line.setLength(0);
+        line.append(attributes.isDirectory() ? 'd' : attributes.isSymbolicLink() ? 'l' : '-');
+        appendPermissions(path, attributes, line);
+
+        String size = Long.toString(attributes.size());
+        line.append(' ');
+        for (int pad = size.length(); pad < 10; ++pad) {
+            line.append(' ');
+        }
+        line.append(size).append(' ');
+
+        long millis = attributes.lastModifiedTime().toMillis();
+        long minute = Math.floorDiv(millis, 60_000L);
+        if (minute != lastMinute[0]) {
+            lastMinute[0] = minute;
+            lastDate[0] = DATE_FORMAT.format(attributes.lastModifiedTime().toInstant());
+        }
+        line.append(lastDate[0]).append(' ').append(path.getFileName().toString()).append('\n');
+        return line;
+    }
+
+    /**
+     * Appends the current user's read, write and execute permissions. With UNIX attributes these come from the
+     * mode bits as the kernel checks them, by comparing numeric ids: the owner's bits if the user owns the file,
+     * the group's bits if the user is in the file's group, and the others' bits if neither; root can read and
+     * write anything, and execute anything with an execute bit. ACLs aren't checked.
+     */
+    private void appendPermissions(Path path, BasicFileAttributes attributes, StringBuilder line) {
+        if (!(attributes instanceof UnixAttributes)) {
+            line.append(Files.isReadable(path) ? 'r' : '-').append(Files.isWritable(path) ? 'w' : '-')
+                    .append(Files.isExecutable(path) ? 'x' : '-');
+            return;
+        }
+
+        UnixAttributes unixAttributes = (UnixAttributes) attributes;
+        int mode = unixAttributes.mode;
+        int bits;   // rwx, as the three low bits
+        if (uid == 0) {
+            bits = 06 | ((mode & 0111) != 0 || attributes.isDirectory() ? 01 : 0);
+        } else if (unixAttributes.uid == uid) {
+            bits = mode >> 6 & 07;
+        } else if (inGroup(unixAttributes.gid)) {
+            bits = mode >> 3 & 07;
+        } else {
+            bits = mode & 07;
+        }
+        line.append((bits & 04) != 0 ? 'r' : '-').append((bits & 02) != 0 ? 'w' : '-')
+                .append((bits & 01) != 0 ? 'x' : '-');
+    }
+
+    private boolean inGroup(long gid) {
+        for (long group : gids) {
+            if (group == gid) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,150 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers where commands were found on the PATH, like the "hash" builtin of UNIX shells, so running a
+ * command again doesn't search every PATH directory again (which is slow when PATH has network mounted
+ * directories). The shell passes the remembered absolute path to ProcessBuilder, which then doesn't search
+ * either.
+ *
+ * An entry is only used while the modification time of the directory it was found in is unchanged, so a
+ * command that was removed, replaced or renamed is looked up again. As in other shells, a command newly
+ * added to an earlier directory on the PATH is only found after "hash -r".
+ *
+ * @author Ky Kartchner
+ */
+class ExecutableCache {
+    private static final boolean WINDOWS = System.getProperty("os.name").startsWith("Windows");
+
+    /**
+     * Where a command was found
+     */
+    private static class Entry {
+        final Path executable;
+        final FileTime directoryModified;
+        int hits = 0;
+
+        Entry(Path executable, FileTime directoryModified) {
+            this.executable = executable;
+            this.directoryModified = directoryModified;
+        }
+    }
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private String path = null; // The PATH the entries were found on
+
+    /**
+     * Returns the absolute path of the executable for a command name, from the cache if its directory is
+     * unchanged and otherwise by searching the PATH. Names containing a directory are returned as they are.
+     *
+     * @param name The command name, e.g. "ls".
+     * @return The executable's absolute path, or the name itself if it isn't found on the PATH.
+     */
+    synchronized String resolve(String name) {
+        if (name.contains("/") || name.contains(File.separator)) {
+            return name;
+        }
+
+        String currentPath = System.getenv("PATH");
+        if (currentPath == null) {
+            return name;
+        }
+        if (!currentPath.equals(path)) { // Everything may resolve differently on a different PATH
+            entries.clear();
+            path = currentPath;
+        }
+
+        Entry entry = entries.get(name);
+        if (entry != null && entry.directoryModified.equals(modified(entry.executable.getParent()))) {
+            ++entry.hits;
+            return entry.executable.toString();
+        }
+
+        entry = search(name, currentPath);
+        if (entry == null) {
+            entries.remove(name);
+            return name;
+        }
+        entry.hits = 1;
+        entries.put(name, entry);
+        return entry.executable.toString();
+    }
+
+    /**
+     * Looks up the specified commands and remembers where they are, printing the ones that aren't found.
+     * Command to execute: "hash [command...]"
+     *
+     * @param names The command names.
+     */
+    synchronized void add(String[] names) {
+        for (String name : names) {
+            if (resolve(name).equals(name)) {
+                System.out.printf("hash: %s not found\n", name);
+            } else {
+                entries.get(name).hits = 0; // Looking it up doesn't count as running it
+            }
+        }
+    }
+
+    /**
+     * Forgets all of the remembered commands.
+     * Command to execute: "hash -r"
+     */
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Prints the remembered commands with the number of times each was used.
+     * Command to execute: "hash"
+     */
+    synchronized void list() {
+        if (entries.isEmpty()) {
+            System.out.println("hash: hash table empty");
+            return;
+        }
+        System.out.println("hits    command");
+        for (Entry entry : entries.values()) {
+            System.out.printf("%4d    %s\n", entry.hits, entry.executable);
+        }
+    }
+
+    /**
+     * Searches the PATH directories in order for an executable file with the specified name (or, on
+     * Windows, with the name plus one of the PATHEXT extensions).
+     */
+    private static Entry search(String name, String path) {
+        String[] extensions = {""};
+        if (WINDOWS) {
+            String pathExt = System.getenv("PATHEXT");
+            extensions = ("" + File.pathSeparator + (pathExt != null ? pathExt : ".COM;.EXE;.BAT;.CMD"))
+                    .split(File.pathSeparator, -1);
+        }
+
+        for (String directory : path.split(File.pathSeparator)) {
+            Path dir = Paths.get(directory.isEmpty() ? "." : directory).toAbsolutePath();
+            for (String extension : extensions) {
+                Path candidate = dir.resolve(name + extension);
+                if (Files.isRegularFile(candidate) && Files.isExecutable(candidate)) {
+                    FileTime modified = modified(dir);
+                    return modified == null ? null : new Entry(candidate, modified);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static FileTime modified(Path directory) {
+        try {
+            return Files.getLastModifiedTime(directory);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,481 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The shell's own versions of cat, cp, head, tail and wc, which run without starting a process. They read
+ * and write streams, so they can also be stages of a pipeline, but when they are given files they work on the
+ * files' channels instead:
+ * cat and cp copy with FileChannel.transferTo/transferFrom, which the kernel does itself (sendfile or
+ * copy_file_range on Linux) when the output is a file or the shell's own output, without the data passing
+ * through the JVM; head and wc scan files through memory mappings (MappedByteBuffer) a large chunk at a time;
+ * and tail reads a file backwards from the end, so only the lines it prints are read.
+ *
+ * Errors go to the shell's error output, since the normal output may be the input of another command.
+ *
+ * @author Ky Kartchner
+ */
+class FileCommands {
+    /**
+     * Size of the buffers used to read streams, and to read a file backwards
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The most of a file mapped at a time
+     */
+    private static final long MAP_CHUNK = 1L << 30;
+
+    /**
+     * Number of lines head and tail print unless told otherwise
+     */
+    private static final int DEFAULT_LINES = 10;
+
+    /**
+     * The exit status of a process killed by SIGPIPE (128 + 13), returned when the next command stopped reading
+     */
+    static final int SIGPIPE_STATUS = 141;
+
+    private final File directory;
+
+    /**
+     * Something done with the bytes of a file or stream a chunk at a time
+     */
+    private interface Scanner {
+        /**
+         * @param chunk The next bytes, from its position to its limit.
+         * @return Whether to keep going.
+         */
+        boolean scan(ByteBuffer chunk) throws IOException;
+    }
+
+    /**
+     * Creates the commands.
+     *
+     * @param directory The directory relative file names are in (the shell's current directory).
+     */
+    FileCommands(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns whether the shell runs a command itself.
+     *
+     * @param name The command's name.
+     * @return Whether it's cat, cp, head, tail or wc.
+     */
+    static boolean isFileCommand(String name) {
+        switch (name) {
+            case "cat":
+            case "cp":
+            case "head":
+            case "tail":
+            case "wc":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Returns whether a command reads its input, rather than files.
+     *
+     * @param command The command and its arguments.
+     * @return Whether it has no file arguments and isn't cp.
+     */
+    static boolean readsInput(String[] command) {
+        return !command[0].equals("cp") && fileArguments(command).isEmpty();
+    }
+
+    /**
+     * Runs a command.
+     *
+     * @param command The command and its arguments.
+     * @param in      Its input, read if it isn't given any files.
+     * @param out     Its output; if this is a FileOutputStream its channel is written to directly.
+     * @return The exit status: 0 if it succeeded, SIGPIPE_STATUS if the next command stopped reading, 1 if not.
+     */
+    int run(String[] command, InputStream in, OutputStream out) {
+        try {
+            switch (command[0]) {
+                case "cat":
+                    return cat(fileArguments(command), in, out);
+                case "cp":
+                    return cp(fileArguments(command));
+                case "head":
+                    return head(lineCount(command), fileArguments(command), in, out);
+                case "tail":
+                    return tail(lineCount(command), fileArguments(command), in, out);
+                default:
+                    return wc(command, in, out);
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException ex) {
+            System.err.printf("%s: option \"-n\" must be followed by a number\n", command[0]);
+            return 1;
+        } catch (IOException e) {
+            if (isClosedPipe(e)) {      // Just because the next command stopped reading
+                return SIGPIPE_STATUS;
+            }
+            System.err.printf("%s: %s\n", command[0], e);
+            return 1;
+        }
+    }
+
+    /**
+     * Returns whether writing failed because the next command in the pipeline stopped reading (an OS pipe, a
+     * process's input that the JVM closed when the process exited, or a pipe to another of these commands).
+     */
+    private static boolean isClosedPipe(IOException e) {
+        return "Broken pipe".equals(e.getMessage()) || "Stream closed".equals(e.getMessage())
+                || "Pipe closed".equals(e.getMessage()) || "Read end dead".equals(e.getMessage());
+    }
+
+    /**
+     * Returns the arguments that aren't options (or option values).
+     */
+    private static List<String> fileArguments(String[] command) {
+        List<String> files = new ArrayList<>();
+        for (int i = 1; i < command.length; ++i) {
+            if (command[i].equals("-n")) {
+                ++i;
+            } else if (!command[i].startsWith("-") || command[i].length() == 1) {
+                files.add(command[i]);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Returns the number of lines given by "-n N" or "-N", or the default.
+     */
+    private static int lineCount(String[] command) {
+        for (int i = 1; i < command.length; ++i) {
+            if (command[i].equals("-n")) {
+                return Integer.parseInt(command[i + 1]);
+            } else if (command[i].matches("-\\d+")) {
+                return Integer.parseInt(command[i].substring(1));
+            }
+        }
+        return DEFAULT_LINES;
+    }
+
+    /**
+     * Copies the files (or the input) to the output.
+     * Command to execute: "cat [file...]"
+     */
+    private int cat(List<String> files, InputStream in, OutputStream out) throws IOException {
+        if (files.isEmpty()) {
+            in.transferTo(out);
+            return 0;
+        }
+        int status = 0;
+        WritableByteChannel target = channel(out);
+        for (String name : files) {
+            try (FileChannel file = FileChannel.open(resolve(name), StandardOpenOption.READ)) {
+                transfer(file, 0, file.size(), target);
+            } catch (NoSuchFileException e) {
+                System.err.printf("cat: %s: No such file\n", name);
+                status = 1;
+            }
+        }
+        return status;
+    }
+
+    /**
+     * Copies a file, into the directory if the destination is one.
+     * Command to execute: "cp [source] [destination]"
+     */
+    private int cp(List<String> files) throws IOException {
+        if (files.size() != 2) {
+            System.err.println("cp: expected a source and a destination");
+            return 1;
+        }
+        Path source = resolve(files.get(0));
+        Path destination = resolve(files.get(1));
+        if (Files.isDirectory(destination)) {
+            destination = destination.resolve(source.getFileName());
+        }
+        if (Files.exists(destination) && Files.isSameFile(source, destination)) {
+            System.err.printf("cp: %s and %s are the same file\n", files.get(0), files.get(1));
+            return 1;
+        }
+
+        try (FileChannel from = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel to = FileChannel.open(destination, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = from.size();
+            for (long copied = 0; copied < size; ) {
+                copied += to.transferFrom(from, copied, size - copied);
+            }
+        } catch (NoSuchFileException e) {
+            System.err.printf("cp: %s: No such file or directory\n", e.getFile());
+            return 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Prints the first lines of a file (or of the input).
+     * Command to execute: "head [-n N] [file]"
+     */
+    private int head(int lines, List<String> files, InputStream in, OutputStream out) throws IOException {
+        long[] remaining = {lines};
+        if (files.isEmpty()) {
+            scan(in, chunk -> {
+                int end = skipLines(chunk, remaining);
+                out.write(chunk.array(), chunk.arrayOffset(), end);
+                return remaining[0] > 0;
+            });
+            return 0;    // The input isn't read to the end; the shell closes it
+        }
+
+        try (FileChannel file = FileChannel.open(resolve(files.get(0)), StandardOpenOption.READ)) {
+            long[] end = {0};   // The end of the last line to print
+            scan(file, chunk -> {
+                end[0] += skipLines(chunk, remaining);
+                return remaining[0] > 0;
+            });
+            transfer(file, 0, end[0], channel(out));
+        } catch (NoSuchFileException e) {
+            System.err.printf("head: %s: No such file\n", files.get(0));
+            return 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Returns how many bytes from the chunk's position make up as many of the remaining lines as it has, and
+     * subtracts them from remaining.
+     */
+    private static int skipLines(ByteBuffer chunk, long[] remaining) {
+        int start = chunk.position();
+        int end = start;
+        while (end < chunk.limit() && remaining[0] > 0) {
+            if (chunk.get(end++) == '\n') {
+                --remaining[0];
+            }
+        }
+        return end - start;
+    }
+
+    /**
+     * Prints the last lines of a file (or of the input). A file is read backwards from the end, a block at a
+     * time, until enough lines have been seen.
+     * Command to execute: "tail [-n N] [file]"
+     */
+    private int tail(int lines, List<String> files, InputStream in, OutputStream out) throws IOException {
+        if (files.isEmpty()) {   // Keep only the last lines while reading the whole input
+            ArrayDeque<byte[]> last = new ArrayDeque<>();
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            scan(in, chunk -> {
+                for (int i = chunk.position(); i < chunk.limit(); ++i) {
+                    line.write(chunk.get(i));
+                    if (chunk.get(i) == '\n') {
+                        last.add(line.toByteArray());
+                        line.reset();
+                        if (last.size() > lines) {
+                            last.remove();
+                        }
+                    }
+                }
+                return true;
+            });
+            if (line.size() > 0) {
+                last.add(line.toByteArray());
+                if (last.size() > lines) {
+                    last.remove();
+                }
+            }
+            for (byte[] kept : last) {
+                out.write(kept);
+            }
+            return 0;
+        }
+
+        try (FileChannel file = FileChannel.open(resolve(files.get(0)), StandardOpenOption.READ)) {
+            long size = file.size();
+            long start = size;       // The start of the first line to print
+            long newlines = 0;
+            ByteBuffer block = ByteBuffer.allocate(BUFFER_SIZE);
+            search:
+            while (start > 0 && lines > 0) {
+                long blockStart = Math.max(0, start - BUFFER_SIZE);
+                block.clear().limit((int) (start - blockStart));
+                while (block.hasRemaining() && file.read(block, blockStart + block.position()) >= 0) {
+                    // Read the whole block
+                }
+                for (int i = block.position() - 1; i >= 0; --i) {
+                    // A newline at the very end of the file doesn't start a line
+                    if (block.get(i) == '\n' && blockStart + i != size - 1 && ++newlines == lines) {
+                        start = blockStart + i + 1;
+                        break search;
+                    }
+                }
+                start = blockStart;
+            }
+            transfer(file, start, size - start, channel(out));
+        } catch (NoSuchFileException e) {
+            System.err.printf("tail: %s: No such file\n", files.get(0));
+            return 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Prints the number of lines, words and bytes of each file (or of the input), and their totals if there is
+     * more than one file. The byte count of a file alone comes from its size without reading it.
+     * Command to execute: "wc [-l] [-w] [-c] [file...]"
+     */
+    private int wc(String[] command, InputStream in, OutputStream out) throws IOException {
+        boolean lines = false;
+        boolean words = false;
+        boolean bytes = false;
+        for (int i = 1; i < command.length; ++i) {
+            if (command[i].startsWith("-") && command[i].length() > 1) {
+                lines |= command[i].contains("l");
+                words |= command[i].contains("w");
+                bytes |= command[i].contains("c");
+            }
+        }
+        if (!lines && !words && !bytes) {
+            lines = words = bytes = true;
+        }
+
+        List<String> files = fileArguments(command);
+        StringBuilder report = new StringBuilder();
+        int status = 0;
+        long[] total = new long[3];
+        if (files.isEmpty()) {
+            long[] counts = new long[3];
+            scan(in, counter(counts));
+            appendCounts(report, counts, lines, words, bytes, null);
+        }
+        for (String name : files) {
+            long[] counts = new long[3];
+            try (FileChannel file = FileChannel.open(resolve(name), StandardOpenOption.READ)) {
+                if (lines || words) {
+                    scan(file, counter(counts));
+                } else {
+                    counts[2] = file.size();
+                }
+            } catch (NoSuchFileException e) {
+                System.err.printf("wc: %s: No such file\n", name);
+                status = 1;
+                continue;
+            }
+            appendCounts(report, counts, lines, words, bytes, name);
+            for (int i = 0; i < 3; ++i) {
+                total[i] += counts[i];
+            }
+        }
+        if (files.size() > 1) {
+            appendCounts(report, total, lines, words, bytes, "total");
+        }
+        out.write(report.toString().getBytes(StandardCharsets.UTF_8));
+        return status;
+    }
+
+    /**
+     * Returns a scanner adding up the lines, words and bytes it sees into counts.
+     */
+    private static Scanner counter(long[] counts) {
+        boolean[] inWord = {false};   // Whether the last byte seen was part of a word
+        return chunk -> {
+            counts[2] += chunk.remaining();
+            for (int i = chunk.position(); i < chunk.limit(); ++i) {
+                byte b = chunk.get(i);
+                boolean space = b == ' ' || b == '\n' || b == '\t' || b == '\r' || b == '\f' || b == 0x0b;
+                if (b == '\n') {
+                    ++counts[0];
+                }
+                if (!space && !inWord[0]) {
+                    ++counts[1];
+                }
+                inWord[0] = !space;
+            }
+            return true;
+        };
+    }
+
+    private static void appendCounts(StringBuilder report, long[] counts, boolean lines, boolean words,
+                                     boolean bytes, String name) {
+        if (lines) {
+            report.append(String.format(" %7d", counts[0]));
+        }
+        if (words) {
+            report.append(String.format(" %7d", counts[1]));
+        }
+        if (bytes) {
+            report.append(String.format(" %7d", counts[2]));
+        }
+        report.append(name != null ? " " + name : "").append('\n');
+    }
+
+    /**
+     * Feeds a file to the scanner through memory mappings of up to MAP_CHUNK bytes.
+     */
+    private static void scan(FileChannel file, Scanner scanner) throws IOException {
+        long size = file.size();
+        for (long position = 0; position < size; position += MAP_CHUNK) {
+            if (!scanner.scan(file.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_CHUNK, size - position)))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Feeds a stream to the scanner a buffer at a time.
+     */
+    private static void scan(InputStream in, Scanner scanner) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            if (!scanner.scan(ByteBuffer.wrap(buffer, 0, read))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Transfers part of a file to a channel, which the kernel does directly if the channel is a file's or the
+     * shell's output (transferTo may move less than asked each time).
+     */
+    private static void transfer(FileChannel file, long position, long count, WritableByteChannel target)
+            throws IOException {
+        for (long sent = 0; sent < count; ) {
+            sent += file.transferTo(position + sent, count - sent, target);
+        }
+    }
+
+    /**
+     * Returns a channel to write to the stream: its own for a FileOutputStream, so transfers to it go
+     * straight to the file descriptor.
+     */
+    private static WritableByteChannel channel(OutputStream out) throws IOException {
+        if (out instanceof FileOutputStream) {
+            return ((FileOutputStream) out).getChannel();   // Closing it would close the stream, so it isn't
+        }
+        out.flush();
+        return Channels.newChannel(out);
+    }
+
+    private Path resolve(String name) {
+        return new File(name).isAbsolute() ? Paths.get(name) : directory.toPath().resolve(name);
+    }
+}
@@ -0,0 +1,259 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Searches files for the lines containing a pattern, like grep. Files are searched as bytes, without decoding
+ * them: large ones through a memory mapping (MappedByteBuffer), so the data isn't copied out of the page
+ * cache, and small ones (for which setting up a mapping costs more than it saves) by reading them at once.
+ *
+ * A pattern without regular expression characters (or any pattern with fixed set) is searched for with the
+ * Boyer-Moore-Horspool algorithm, which skips ahead up to the pattern's length at a time and only looks for
+ * line boundaries around a match. Other patterns are matched with java.util.regex one line at a time, over a
+ * view of the bytes as ISO-8859-1 characters; the pattern is converted the same way, so UTF-8 text in it still
+ * matches, but ignoring case only works for ASCII letters.
+ *
+ * @author Ky Kartchner
+ */
+class Grep {
+    /**
+     * Files smaller than this are read rather than mapped
+     */
+    private static final long MAP_THRESHOLD = 1 << 16;
+
+    /**
+     * How much of the start of a file is checked for a NUL byte to decide if it is binary
+     */
+    private static final int BINARY_CHECK = 8192;
+
+    private final boolean ignoreCase;
+    private final boolean lineNumbers;
+    private final boolean filesOnly;
+    private final boolean fileNames;
+
+    private final byte[] literal;     // null if the pattern is a regular expression
+    private final int[] shift;        // Boyer-Moore-Horspool bad character shifts, for literal
+    private final Pattern regex;      // null if the pattern is a literal
+
+    /**
+     * Prepares a search.
+     *
+     * @param pattern     The pattern to search for.
+     * @param fixed       Whether the pattern is a literal string even if it has regular expression characters.
+     * @param ignoreCase  Whether to ignore the case of (ASCII) letters.
+     * @param lineNumbers Whether to print the line number of each matching line.
+     * @param filesOnly   Whether to print only the names of the files that have a matching line.
+     * @param fileNames   Whether to print the file name before each matching line.
+     */
+    Grep(String pattern, boolean fixed, boolean ignoreCase, boolean lineNumbers, boolean filesOnly,
+         boolean fileNames) {
+        this.ignoreCase = ignoreCase;
+        this.lineNumbers = lineNumbers;
+        this.filesOnly = filesOnly;
+        this.fileNames = fileNames;
+
+        byte[] bytes = pattern.getBytes(StandardCharsets.UTF_8);
+        boolean isLiteral = fixed || !pattern.matches(".*[\\\\.\\[\\]{}()*+?^$|].*");
+        if (isLiteral && ignoreCase) {  // Only ASCII letters are folded
+            for (byte b : bytes) {
+                isLiteral &= b >= 0;
+            }
+        }
+
+        if (isLiteral) {
+            literal = bytes;
+            shift = new int[256];
+            for (int i = 0; i < bytes.length; ++i) {
+                literal[i] = fold(bytes[i]);
+            }
+            Arrays.fill(shift, Math.max(literal.length, 1));
+            for (int i = 0; i < literal.length - 1; ++i) {
+                shift[literal[i] & 0xff] = literal.length - 1 - i;
+            }
+            regex = null;
+        } else {
+            literal = null;
+            shift = null;
+            regex = Pattern.compile(new String(bytes, StandardCharsets.ISO_8859_1),
+                    (fixed ? Pattern.LITERAL : 0) | (ignoreCase ? Pattern.CASE_INSENSITIVE : 0));
+        }
+    }
+
+    /**
+     * Searches one file, appending its matching lines (or just its name) to the output.
+     *
+     * @param file  The file to search.
+     * @param shown The file's name as it should be printed.
+     * @param out   Where to write the results.
+     * @throws IOException If the file can't be read.
+     */
+    void search(Path file, String shown, StringBuilder out) throws IOException {
+        ByteBuffer text;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0) {
+                return;
+            } else if (size > Integer.MAX_VALUE) {
+                out.append("grep: ").append(shown).append(": too large to search\n");
+                return;
+            } else if (size < MAP_THRESHOLD) {
+                text = ByteBuffer.allocate((int) size);
+                while (text.hasRemaining() && channel.read(text) >= 0) {
+                    // Read until full or end of file
+                }
+                text.flip();
+            } else {
+                text = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+        }
+
+        boolean binary = false;
+        for (int i = 0; i < Math.min(text.limit(), BINARY_CHECK) && !binary; ++i) {
+            binary = text.get(i) == 0;
+        }
+
+        int end = text.limit();
+        int lineNumber = 1;
+        int countedTo = 0;  // Lines have been counted up to here
+        Matcher matcher = regex == null ? null : regex.matcher(new ByteChars(text));
+        int position = 0;
+        while (position < end) {
+            int lineStart;
+            int lineEnd;
+            if (literal != null) {
+                int match = indexOf(text, position, end);
+                if (match < 0) {
+                    break;
+                }
+                lineStart = lastIndexOf(text, (byte) '\n', match - 1) + 1;
+                lineEnd = indexOf(text, (byte) '\n', match, end);
+            } else {
+                lineStart = position;
+                lineEnd = indexOf(text, (byte) '\n', position, end);
+                matcher.region(lineStart, lineEnd);
+                if (!matcher.find()) {
+                    position = lineEnd + 1;
+                    continue;
+                }
+            }
+
+            if (binary || filesOnly) {
+                out.append(binary && !filesOnly ? "Binary file " + shown + " matches\n" : shown + "\n");
+                return;
+            }
+            if (fileNames) {
+                out.append(shown).append(':');
+            }
+            if (lineNumbers) {
+                for (int i = countedTo; i < lineStart; ++i) {
+                    lineNumber += text.get(i) == '\n' ? 1 : 0;
+                }
+                countedTo = lineStart;
+                out.append(lineNumber).append(':');
+            }
+            byte[] line = new byte[lineEnd - lineStart];
+            text.get(lineStart, line);
+            out.append(new String(line, StandardCharsets.UTF_8)).append('\n');
+            position = lineEnd + 1;
+        }
+    }
+
+    /**
+     * Finds the literal in text[from, end) with Boyer-Moore-Horspool: compare the pattern from its last byte
+     * back, and on a mismatch shift by how far the text's byte under the pattern's end is from the end of the
+     * pattern.
+     *
+     * @return The index of the first match, or -1.
+     */
+    private int indexOf(ByteBuffer text, int from, int end) {
+        int last = literal.length - 1;
+        if (last < 0) {
+            return from;
+        }
+        for (int i = from; i + last < end; i += shift[fold(text.get(i + last)) & 0xff]) {
+            int j = last;
+            while (j >= 0 && fold(text.get(i + j)) == literal[j]) {
+                --j;
+            }
+            if (j < 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private byte fold(byte b) {
+        return ignoreCase && b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+    }
+
+    /**
+     * Returns the index of the first b in text[from, end), or end if there is none.
+     */
+    private static int indexOf(ByteBuffer text, byte b, int from, int end) {
+        for (int i = from; i < end; ++i) {
+            if (text.get(i) == b) {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Returns the index of the last b in text[0, from], or -1 if there is none.
+     */
+    private static int lastIndexOf(ByteBuffer text, byte b, int from) {
+        for (int i = from; i >= 0; --i) {
+            if (text.get(i) == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * A view of bytes as ISO-8859-1 characters, for matching regular expressions without decoding
+     */
+    private static class ByteChars implements CharSequence {
+        private final ByteBuffer bytes;
+        private final int start;
+        private final int end;
+
+        ByteChars(ByteBuffer bytes) {
+            this(bytes, 0, bytes.limit());
+        }
+
+        private ByteChars(ByteBuffer bytes, int start, int end) {
+            this.bytes = bytes;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (bytes.get(start + index) & 0xff);
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            return new ByteChars(bytes, start + from, start + to);
+        }
+
+        @Override
+        public String toString() {
+            byte[] chars = new byte[end - start];
+            bytes.get(start, chars);
+            return new String(chars, StandardCharsets.ISO_8859_1);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * Keeps track of the commands running in the background. Each job is numbered like in other shells ([1],
+ * [2], ...) and is watched with the processes' onExit() futures rather than polled: when all of a job's
+ * processes have exited, a completion notice is queued to be printed before the next prompt, and the
+ * job's resource use is reported to the shell's child process totals.
+ *
+ * @author Ky Kartchner
+ */
+class JobTable {
+    /**
+     * A background command and its processes (one for a single command, one per stage for a pipeline)
+     */
+    static class Job {
+        final int id;
+        final String command;
+        final List<Process> processes;
+
+        /**
+         * Completes once all of the processes have exited and the job's notice has been queued
+         */
+        CompletableFuture<Void> done;
+
+        Job(int id, String command, List<Process> processes) {
+            this.id = id;
+            this.command = command;
+            this.processes = processes;
+        }
+
+        /**
+         * Returns the exit status of the job's last process, which is the status of the job.
+         */
+        int exitStatus() {
+            return processes.get(processes.size() - 1).exitValue();
+        }
+
+        /**
+         * Returns "Running", "Done", or "Exit [status]".
+         */
+        String state() {
+            if (!done.isDone()) {
+                return "Running";
+            }
+            return exitStatus() == 0 ? "Done" : "Exit " + exitStatus();
+        }
+    }
+
+    private final TreeMap<Integer, Job> jobs = new TreeMap<>();
+    private final ConcurrentLinkedQueue<String> notices = new ConcurrentLinkedQueue<>();
+    private final Consumer<ChildUsage> addChildUsage;
+
+    /**
+     * Creates an empty job table.
+     *
+     * @param addChildUsage Called with the resources used by each job when it finishes.
+     */
+    JobTable(Consumer<ChildUsage> addChildUsage) {
+        this.addChildUsage = addChildUsage;
+    }
+
+    /**
+     * Adds the processes of a command that was started in the background, and prints its job number and
+     * the process id of its last process (e.g. "[1] 12345").
+     *
+     * @param command   The command line that started the processes.
+     * @param processes The processes, in pipeline order.
+     * @return The new job.
+     */
+    synchronized Job add(String command, List<Process> processes) {
+        int id = jobs.isEmpty() ? 1 : jobs.lastKey() + 1;
+        Job job = new Job(id, command, processes);
+        ChildUsage usage = ChildUsage.start();
+        usage.watch(processes);
+
+        CompletableFuture<?>[] exits = new CompletableFuture<?>[processes.size()];
+        for (int i = 0; i < exits.length; ++i) {
+            exits[i] = processes.get(i).onExit();
+        }
+        job.done = CompletableFuture.allOf(exits).thenRun(() -> {
+            addChildUsage.accept(usage.finish());
+            notices.add(String.format("[%d]+ %-8s %s", job.id, job.exitStatus() == 0 ? "Done"
+                    : "Exit " + job.exitStatus(), job.command));
+        });
+
+        jobs.put(id, job);
+        System.out.printf("[%d] %d\n", id, processes.get(processes.size() - 1).pid());
+        return job;
+    }
+
+    /**
+     * Prints the notices of the jobs that finished since the last call and removes those jobs from the
+     * table. Called before each prompt.
+     */
+    void printNotices() {
+        String notice;
+        while ((notice = notices.poll()) != null) {
+            System.out.println(notice);
+        }
+
+        synchronized (this) {
+            jobs.values().removeIf(job -> job.done.isDone());
+        }
+    }
+
+    /**
+     * Lists the jobs and their states.
+     * Command to execute: "jobs"
+     */
+    synchronized void list() {
+        for (Job job : jobs.values()) {
+            System.out.printf("[%d]  %-8s %s\n", job.id, job.state(), job.command);
+        }
+    }
+
+    /**
+     * Finds a job from an argument such as "2" or "%2", or the most recent job if the argument is null.
+     *
+     * @param arg The job number, or null.
+     * @return The job, or null (after printing why) if there is no such job.
+     */
+    synchronized Job find(String arg) {
+        if (arg == null) {
+            if (jobs.isEmpty()) {
+                System.out.println("No current job");
+                return null;
+            }
+            return jobs.lastEntry().getValue();
+        }
+
+        try {
+            Job job = jobs.get(Integer.parseInt(arg.startsWith("%") ? arg.substring(1) : arg));
+            if (job == null) {
+                System.out.printf("No such job: %s\n", arg);
+            }
+            return job;
+        } catch (NumberFormatException ex) {
+            System.out.printf("Error: \"%s\" is not a job number\n", arg);
+            return null;
+        }
+    }
+
+    /**
+     * Waits for a job to finish in the foreground, then prints its notice.
+     * Command to execute: "fg [job]"
+     *
+     * @param job The job to wait for.
+     */
+    void foreground(Job job) {
+        System.out.println(job.command);
+        job.done.join();
+        printNotices();
+    }
+
+    /**
+     * Waits for all of the current jobs to finish, printing their notices as they do.
+     * Command to execute: "wait"
+     */
+    void waitAll() {
+        List<Job> running;
+        synchronized (this) {
+            running = new ArrayList<>(jobs.values());
+        }
+        for (Job job : running) {
+            job.done.join();
+            printNotices();
+        }
+    }
+
+    /**
+     * Stops all of a job's processes, forcibly if asked to (SIGKILL rather than SIGTERM on UNIX).
+     * Command to execute: "kill [-9] [job]"
+     *
+     * @param job      The job to stop.
+     * @param forcibly Whether to kill the processes without letting them clean up.
+     */
+    void kill(Job job, boolean forcibly) {
+        for (Process process : job.processes) {
+            if (forcibly) {
+                process.destroyForcibly();
+            } else {
+                process.destroy();
+            }
+        }
+    }
+}
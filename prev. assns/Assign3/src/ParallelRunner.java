@@ -0,0 +1,154 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs one command once for each of a list of arguments, with up to a set number of processes at a time, like
+ * GNU parallel or "xargs -P". The shell thread only starts processes, waiting for a free slot first; each
+ * process's onExit() future frees its slot again, so no thread is tied up waiting for any one process.
+ *
+ * Each process writes its output and errors to its own temporary file, which is printed all at once when the
+ * process exits, so the output of different processes is never interleaved. With keepOrder it is printed in
+ * the order of the arguments instead of the order the processes finish in.
+ *
+ * @author Ky Kartchner
+ */
+class ParallelRunner {
+    private final int slots;
+    private final boolean keepOrder;
+
+    /**
+     * The output file of each run, until it has been printed
+     */
+    private Path[] outputs;
+    private boolean[] finished;
+    private int nextToPrint = 0; // With keepOrder, runs before this one have been printed
+
+    /**
+     * Creates a runner.
+     *
+     * @param slots     The most processes to run at the same time.
+     * @param keepOrder Whether to print the outputs in the order of the arguments.
+     */
+    ParallelRunner(int slots, boolean keepOrder) {
+        this.slots = slots;
+        this.keepOrder = keepOrder;
+    }
+
+    /**
+     * Runs the command once for each argument, replacing "{}" in the command with the argument or adding the
+     * argument to the end if there is no "{}", then prints the number of runs, the failures, and the throughput.
+     *
+     * @param command    The command, with its executable already resolved.
+     * @param arguments  The arguments to run it with.
+     * @param directory  The directory to run it in.
+     * @return The exit status of each run (-1 if it couldn't be started).
+     */
+    int[] run(String[] command, List<String> arguments, File directory) {
+        int runs = arguments.size();
+        outputs = new Path[runs];
+        finished = new boolean[runs];
+        nextToPrint = 0;
+        int[] exitStatus = new int[runs];
+        List<CompletableFuture<Void>> done = new ArrayList<>();
+        Semaphore free = new Semaphore(slots);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < runs; ++i) {
+            free.acquireUninterruptibly();          // Wait until fewer than the limit are running
+            int run = i;
+            String[] runCommand = substitute(command, arguments.get(i));
+            try {
+                outputs[i] = Files.createTempFile("parallel", ".out");
+                ProcessBuilder processBuilder = new ProcessBuilder(runCommand);
+                processBuilder.directory(directory);
+                processBuilder.redirectOutput(outputs[i].toFile());
+                processBuilder.redirectErrorStream(true);
+                Process process = processBuilder.start();
+                process.getOutputStream().close();  // There's no input for it
+
+                done.add(process.onExit().thenAccept(exited -> {
+                    exitStatus[run] = exited.exitValue();
+                    free.release();
+                    finish(run);
+                }));
+            } catch (IOException e) {
+                System.out.printf("parallel: can't run \"%s\" (%s)\n", String.join(" ", runCommand), e.getMessage());
+                exitStatus[i] = -1;
+                free.release();
+                finish(i);
+            }
+        }
+        CompletableFuture.allOf(done.toArray(new CompletableFuture<?>[0])).join();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        int failures = 0;
+        for (int i = 0; i < runs; ++i) {
+            if (exitStatus[i] != 0) {
+                ++failures;
+                System.out.printf("parallel: \"%s\" failed (%s)\n", arguments.get(i),
+                        exitStatus[i] < 0 ? "not started" : "exit status " + exitStatus[i]);
+            }
+        }
+        System.out.printf("parallel: %d runs, %d failed, %.3f s, %.1f runs/s\n", runs, failures, seconds,
+                runs / seconds);
+        return exitStatus;
+    }
+
+    /**
+     * Replaces every "{}" in the command with the argument, or adds it to the end if there isn't one.
+     */
+    private static String[] substitute(String[] command, String argument) {
+        List<String> substituted = new ArrayList<>();
+        boolean replaced = false;
+        for (String arg : command) {
+            if (arg.contains("{}")) {
+                substituted.add(arg.replace("{}", argument));
+                replaced = true;
+            } else {
+                substituted.add(arg);
+            }
+        }
+        if (!replaced) {
+            substituted.add(argument);
+        }
+        return substituted.toArray(new String[0]);
+    }
+
+    /**
+     * Prints a run's output once it's done, or with keepOrder, prints the outputs of all the runs that are now
+     * done and next in order. Called from the processes' exit threads, one at a time.
+     */
+    private synchronized void finish(int run) {
+        finished[run] = true;
+        if (!keepOrder) {
+            print(run);
+            return;
+        }
+        while (nextToPrint < finished.length && finished[nextToPrint]) {
+            print(nextToPrint++);
+        }
+    }
+
+    /**
+     * Copies a run's output file to the shell's output and deletes it.
+     */
+    private void print(int run) {
+        if (outputs[run] == null) {
+            return;
+        }
+        try {
+            Files.copy(outputs[run], System.out);
+            System.out.flush();
+            Files.delete(outputs[run]);
+        } catch (IOException e) {
+            System.out.printf("parallel: output lost (%s)\n", e);
+        }
+        outputs[run] = null;
+    }
+}
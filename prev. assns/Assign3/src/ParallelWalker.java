@@ -0,0 +1,158 @@
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Walks directory trees on a ForkJoinPool, like Files.walkFileTree but with a task for each directory, so the
+ * subdirectories of a directory are walked (and their files visited) in parallel. Symbolic links are visited
+ * but not followed.
+ *
+ * Each directory's output is collected while its entries are visited, then written to the shell's output as
+ * soon as the directory is done, so results appear while the walk goes on, and the lines for one directory are
+ * never mixed with those of another. The order of the directories is whichever finishes first.
+ *
+ * @author Ky Kartchner
+ */
+class ParallelWalker {
+    /**
+     * Called for each file and directory found, from any of the pool's threads
+     */
+    interface Visitor {
+        /**
+         * @param path       The file or directory.
+         * @param attributes Its attributes (of the link itself for a symbolic link).
+         * @param out        Where to write the results for it.
+         */
+        void visit(Path path, BasicFileAttributes attributes, StringBuilder out) throws IOException;
+    }
+
+    /**
+     * Size of the output buffer
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final String name;
+    private final Visitor visitor;
+    private Writer out;
+
+    /**
+     * Creates a walker.
+     *
+     * @param name    The command's name, for error messages.
+     * @param visitor What to do with each file and directory.
+     */
+    ParallelWalker(String name, Visitor visitor) {
+        this.name = name;
+        this.visitor = visitor;
+    }
+
+    /**
+     * Visits each of the paths and, for each one that is a directory, everything under it.
+     *
+     * @param roots The paths to start at.
+     */
+    void walk(List<Path> roots) {
+        System.out.flush(); // Anything the shell printed before must come first
+        out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(FileDescriptor.out)), BUFFER_SIZE);
+        List<WalkTask> tasks = new ArrayList<>();
+        for (Path root : roots) {
+            tasks.add(new WalkTask(root, true));
+        }
+        ForkJoinPool.commonPool().invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+        try {
+            out.flush(); // Not closed, as that would close the shell's output
+        } catch (IOException e) {
+            // The shell's output is gone; nothing more can be printed
+        }
+    }
+
+    /**
+     * Visits one path, and if it's a directory, visits its entries and forks a task for each subdirectory.
+     */
+    private class WalkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Path path;
+        private final boolean root;
+
+        WalkTask(Path path, boolean root) {
+            this.path = path;
+            this.root = root;
+        }
+
+        @Override
+        protected void compute() {
+            StringBuilder output = new StringBuilder();
+            List<WalkTask> subdirectories = new ArrayList<>();
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class,
+                        root ? new LinkOption[0] : new LinkOption[]{LinkOption.NOFOLLOW_LINKS});
+                visitor.visit(path, attributes, output);
+                if (attributes.isDirectory()) {
+                    try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+                        for (Path entry : stream) {
+                            visitEntry(entry, output, subdirectories);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                output.append(name).append(": ").append(path.toString()).append(": ").append(e.toString())
+                        .append('\n');
+            }
+            write(output);
+            invokeAll(subdirectories);
+        }
+
+        /**
+         * Visits a file, or queues a task for a directory (which visits it itself).
+         */
+        private void visitEntry(Path entry, StringBuilder output, List<WalkTask> subdirectories) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(entry, BasicFileAttributes.class,
+                        LinkOption.NOFOLLOW_LINKS);
+                if (attributes.isDirectory()) {
+                    subdirectories.add(new WalkTask(entry, false));
+                } else {
+                    visitor.visit(entry, attributes, output);
+                }
+            } catch (IOException e) {
+                output.append(name).append(": ").append(entry.toString()).append(": ").append(e.toString())
+                        .append('\n');
+            }
+        }
+    }
+
+    /**
+     * Writes one directory's output to the shell's output at once.
+     */
+    private void write(StringBuilder output) {
+        if (output.length() == 0) {
+            return;
+        }
+        synchronized (this) {
+            try {
+                out.append(output);
+                out.flush();
+            } catch (IOException e) {
+                // The shell's output is gone; nothing more can be printed
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Measures the throughput of piping one process's output into another process in different ways:
+ * relaying one byte at a time through the shell (how the shell used to pipe), relaying with
+ * InputStream.transferTo, relaying with a 64 KiB buffer (relay), and connecting the
+ * processes directly with an OS pipe (ProcessBuilder.startPipeline), where the data never enters the JVM.
+ * The producer is "head -c [bytes] /dev/zero" and the consumer is "cat > /dev/null".
+ *
+ * Usage: java PipeBenchmark [megabytes]   (default 256)
+ *
+ * @author Ky Kartchner
+ */
+public class PipeBenchmark {
+    /**
+     * The byte-at-a-time relay is so slow it only pipes this much at most; its rate is still comparable
+     */
+    private static final long MAX_BYTE_RELAY = 16L << 20;
+
+    /**
+     * Size of the buffer relay copies through
+     */
+    private static final int RELAY_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * A way of connecting the producer to the consumer
+     */
+    private interface Relay {
+        void pipe(Process producer, Process consumer) throws IOException;
+    }
+
+    public static void main(String[] args) throws Exception {
+        long bytes = (args.length > 0 ? Long.parseLong(args[0]) : 256) << 20;
+
+        System.out.printf("%-16s %10s %10s %12s\n", "Method", "MB", "Seconds", "MB/s");
+        time("byte relay", Math.min(bytes, MAX_BYTE_RELAY), (producer, consumer) -> {
+            InputStream in = producer.getInputStream();
+            OutputStream out = consumer.getOutputStream();
+            int data;
+            while ((data = in.read()) != -1) {
+                out.write(data);
+            }
+            out.close();
+        });
+        time("transferTo", bytes, (producer, consumer) -> {
+            try (OutputStream out = consumer.getOutputStream()) {
+                producer.getInputStream().transferTo(out);
+            }
+        });
+        time("64 KiB relay", bytes, (producer, consumer) -> relay(producer.getInputStream(),
+                consumer.getOutputStream()));
+        time("startPipeline", bytes, null);
+    }
+
+    /**
+     * Copies everything from one stream to another in large blocks, then closes the output so the reader sees
+     * end of file.
+     *
+     * @param from The stream to read from (e.g. a process's output).
+     * @param to   The stream to write to (e.g. another process's input).
+     * @return The number of bytes copied.
+     * @throws IOException If either stream fails.
+     */
+    private static long relay(InputStream from, OutputStream to) throws IOException {
+        byte[] buffer = new byte[RELAY_BUFFER_SIZE];
+        long total = 0;
+        try (to) {
+            int read;
+            while ((read = from.read(buffer)) != -1) { // Read as much as is available, up to the buffer size
+                to.write(buffer, 0, read);             //      Then write all of it at once
+                total += read;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Pipes the specified number of bytes with the specified relay, or with an OS pipe if relay is null,
+     * and prints the throughput.
+     */
+    private static void time(String name, long bytes, Relay relay) throws IOException, InterruptedException {
+        ProcessBuilder producer = new ProcessBuilder("head", "-c", Long.toString(bytes), "/dev/zero");
+        ProcessBuilder consumer = new ProcessBuilder("sh", "-c", "cat > /dev/null");
+
+        long start = System.nanoTime();
+        List<Process> processes;
+        if (relay == null) {
+            processes = ProcessBuilder.startPipeline(List.of(producer, consumer));
+        } else {
+            processes = List.of(producer.start(), consumer.start());
+            relay.pipe(processes.get(0), processes.get(1));
+        }
+        for (Process process : processes) {
+            process.waitFor();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        double megabytes = bytes / (1024.0 * 1024.0);
+        System.out.printf("%-16s %10.0f %10.3f %12.1f\n", name, megabytes, seconds, megabytes / seconds);
+    }
+}
@@ -0,0 +1,117 @@
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The file redirections of one command: "< file", "> file", ">> file", "2> file", "2>> file" and "2>&1" (the
+ * file name may also be written right after the operator, e.g. ">out.txt"). They are given to ProcessBuilder
+ * as Redirects, so the process reads and writes the files itself and the data never passes through the shell.
+ *
+ * "2>&1" sends the errors wherever the output goes, wherever it appears in the command (unlike UNIX shells,
+ * where "2>&1 > file" would leave the errors on the terminal).
+ *
+ * @author Ky Kartchner
+ */
+class Redirections {
+    /**
+     * The command and its arguments, without the redirections
+     */
+    final List<String> command;
+
+    ProcessBuilder.Redirect input = null;  // null if not redirected
+    ProcessBuilder.Redirect output = null; // null if not redirected
+    ProcessBuilder.Redirect error = null;  // null if not redirected
+    boolean errorToOutput = false;
+
+    private Redirections(List<String> command) {
+        this.command = command;
+    }
+
+    /**
+     * Separates the redirections of a command from its arguments.
+     *
+     * @param args      The command, its arguments and its redirections.
+     * @param quoted    Whether each argument was quoted; quoted arguments are never redirections.
+     * @param directory The directory relative file names are in (the shell's current directory).
+     * @return The redirections, or null (after printing why) if they aren't valid.
+     */
+    static Redirections parse(String[] args, boolean[] quoted, File directory) {
+        List<String> command = new ArrayList<>();
+        Redirections redirections = new Redirections(command);
+
+        for (int i = 0; i < args.length; ++i) {
+            String arg = args[i];
+            if (quoted[i]) {
+                command.add(arg);
+                continue;
+            }
+            if (arg.equals("2>&1")) {
+                redirections.errorToOutput = true;
+                continue;
+            }
+
+            String operator = arg.startsWith("2>>") ? "2>>" : arg.startsWith("2>") ? "2>"
+                    : arg.startsWith(">>") ? ">>" : arg.startsWith(">") ? ">" : arg.startsWith("<") ? "<" : null;
+            if (operator == null) {
+                command.add(arg);
+                continue;
+            }
+
+            // The file name is the rest of the argument, or else the next argument:
+            String fileName = arg.length() > operator.length() ? arg.substring(operator.length())
+                    : i + 1 < args.length ? args[++i] : null;
+            if (fileName == null) {
+                System.out.printf("Invalid redirection: missing file name after \"%s\"\n", operator);
+                return null;
+            }
+            File file = new File(fileName).isAbsolute() ? new File(fileName) : new File(directory, fileName);
+
+            switch (operator) {
+                case "<":
+                    if (!Files.isReadable(file.toPath())) {
+                        System.out.printf("Invalid redirection: \"%s\" can't be read\n", fileName);
+                        return null;
+                    }
+                    redirections.input = ProcessBuilder.Redirect.from(file);
+                    break;
+                case ">":
+                    redirections.output = ProcessBuilder.Redirect.to(file);
+                    break;
+                case ">>":
+                    redirections.output = ProcessBuilder.Redirect.appendTo(file);
+                    break;
+                case "2>":
+                    redirections.error = ProcessBuilder.Redirect.to(file);
+                    break;
+                default:
+                    redirections.error = ProcessBuilder.Redirect.appendTo(file);
+                    break;
+            }
+        }
+
+        if (command.isEmpty()) {
+            System.out.println("Invalid redirection: missing command");
+            return null;
+        }
+        return redirections;
+    }
+
+    /**
+     * Applies the redirections to a process builder, leaving the streams that aren't redirected as they are.
+     *
+     * @param processBuilder The process builder of the command.
+     */
+    void apply(ProcessBuilder processBuilder) {
+        if (input != null) {
+            processBuilder.redirectInput(input);
+        }
+        if (output != null) {
+            processBuilder.redirectOutput(output);
+        }
+        if (error != null) {
+            processBuilder.redirectError(error);
+        }
+        processBuilder.redirectErrorStream(errorToOutput);
+    }
+}